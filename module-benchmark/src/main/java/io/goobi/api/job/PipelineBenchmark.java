@@ -0,0 +1,100 @@
+package io.goobi.api.job;
+
+import io.goobi.api.job.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Full import of an export file: parsing, identifier lookup, mapping and saving.
+ *
+ * The file is processed by the plugin itself. The vocabulary server is replaced by a prefetched index and an in-memory sink that only counts the
+ * saved records and optionally simulates the latency of a save request. Half of the identifiers exist in the vocabulary before each run.
+ *
+ * The class is part of the plugin package to create the plugin with its package-private constructor for the prefetched index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PipelineBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    @Param({ "1", "8" })
+    public int saveThreads;
+
+    // simulated duration of a single save request
+    @Param({ "0", "50" })
+    public int saveLatencyMicros;
+
+    private Path folder;
+    private Path exportFile;
+    private RecordMapper mapper;
+    private HerisQuartzPlugin plugin;
+    private final LongAdder savedRecords = new LongAdder();
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("heris-benchmark");
+        exportFile = BenchmarkData.writeExport(folder, size);
+        mapper = RecordMapper.create(BenchmarkData.mapping(), BenchmarkData.schema());
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareVocabulary() {
+        VocabularyRecordIndex index = new VocabularyRecordIndex(BenchmarkData.IDENTIFIER_DEFINITION_ID);
+        for (int i = 0; i < size; i += 2) {
+            index.add(BenchmarkData.existingRecord(i + 1L, BenchmarkData.identifier(i)));
+        }
+        plugin = new HerisQuartzPlugin(mapper, BenchmarkData.mapping().get("herisid"), index, BenchmarkData::newRecord);
+        savedRecords.reset();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(exportFile);
+        Files.deleteIfExists(folder);
+    }
+
+    @Benchmark
+    public long importFile() throws IOException {
+        long latency = TimeUnit.MICROSECONDS.toNanos(saveLatencyMicros);
+        RecordSaver saver = new RecordSaver(r -> {
+            if (latency > 0) {
+                LockSupport.parkNanos(latency);
+            }
+            savedRecords.increment();
+        }, saveThreads, 500, 1);
+        try {
+            plugin.processFile(exportFile, null, r -> {
+                if (r != null) {
+                    saver.submit(r);
+                }
+            });
+        } finally {
+            saver.close();
+        }
+        return savedRecords.sum();
+    }
+}
@@ -0,0 +1,140 @@
+package io.goobi.api.job.benchmark;
+
+import io.goobi.vocabulary.exchange.FieldDefinition;
+import io.goobi.vocabulary.exchange.FieldInstance;
+import io.goobi.vocabulary.exchange.FieldValue;
+import io.goobi.vocabulary.exchange.TranslationInstance;
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+import io.goobi.vocabulary.exchange.VocabularySchema;
+import io.goobi.workflow.api.vocabulary.helper.ExtendedVocabularyRecord;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic HERIS exports and vocabulary objects for the benchmarks
+ */
+public final class BenchmarkData {
+
+    public static final long IDENTIFIER_DEFINITION_ID = 1;
+
+    private static final String[] FIELD_NAMES = { "herisid", "objektid", "title", "type", "mainCategoryA", "mainCategoryB", "mainCategoryC",
+            "subCategory" };
+
+    private static final String[] JSON_NAMES = { "HERIS-ID", "Alte Objekt-ID", "Katalogtitel", "Typ", "Hauptkategorie grob",
+            "Hauptkategorie mittel", "Hauptkategorie fein", "Nebenkategorie grob" };
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Write an export file with the given number of objects. The objects contain the mapped fields and some additional unmapped fields like the
+     * real export.
+     *
+     * @param folder target folder
+     * @param size number of objects
+     * @return the written file
+     * @throws IOException if the file cannot be written
+     */
+
+    public static Path writeExport(Path folder, int size) throws IOException {
+        Path file = folder.resolve("heris_" + size + ".json");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("[\n");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    writer.write(",\n");
+                }
+                writer.write("  {\n");
+                writer.write("    \"HERIS-ID\": \"" + identifier(i) + "\",\n");
+                writer.write("    \"Alte Objekt-ID\": \"" + (100000 + i) + "\",\n");
+                writer.write("    \"Katalogtitel\": \"Objekt " + i + " der Gemeinde " + (i % 2100) + "\",\n");
+                writer.write("    \"Typ\": \"Baudenkmal\",\n");
+                writer.write("    \"Hauptkategorie grob\": \"sakrale Bauten\",\n");
+                writer.write("    \"Hauptkategorie mittel\": \"Kapelle\",\n");
+                writer.write("    \"Hauptkategorie fein\": \"Wegkapelle\",\n");
+                writer.write("    \"Nebenkategorie grob\": " + (i % 3 == 0 ? "null" : "\"Kleindenkmal\"") + ",\n");
+                writer.write("    \"Denkmalschutzstatus\": \"Denkmalschutz per Bescheid\",\n");
+                writer.write("    \"Bauzeit von\": \"" + (1500 + i % 500) + "\",\n");
+                writer.write("    \"Longitude\": null,\n");
+                writer.write("    \"Latitude\": null\n");
+                writer.write("  }");
+            }
+            writer.write("\n]\n");
+        }
+        return file;
+    }
+
+    public static String identifier(int index) {
+        return String.valueOf(1000000 + index);
+    }
+
+    /**
+     * @return field mapping like in the default configuration
+     */
+
+    public static Map<String, String> mapping() {
+        Map<String, String> mapping = new LinkedHashMap<>();
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            mapping.put(FIELD_NAMES[i], "$.['" + JSON_NAMES[i] + "']");
+        }
+        return mapping;
+    }
+
+    /**
+     * @return schema containing all mapped fields
+     */
+
+    public static VocabularySchema schema() {
+        VocabularySchema schema = new VocabularySchema();
+        schema.setId(1L);
+        List<FieldDefinition> definitions = new ArrayList<>();
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            FieldDefinition definition = new FieldDefinition();
+            definition.setId(IDENTIFIER_DEFINITION_ID + i);
+            definition.setSchemaId(1L);
+            definition.setName(FIELD_NAMES[i]);
+            definitions.add(definition);
+        }
+        schema.setDefinitions(definitions);
+        return schema;
+    }
+
+    public static ExtendedVocabularyRecord newRecord() {
+        VocabularyRecord vocabRecord = new VocabularyRecord();
+        vocabRecord.setVocabularyId(1L);
+        vocabRecord.setFields(new HashSet<>());
+        return new ExtendedVocabularyRecord(vocabRecord);
+    }
+
+    /**
+     * Create a saved record that only contains the identifier field
+     *
+     * @param id record id
+     * @param identifier HERIS identifier
+     * @return the record
+     */
+
+    public static ExtendedVocabularyRecord existingRecord(long id, String identifier) {
+        ExtendedVocabularyRecord vocabRecord = newRecord();
+        vocabRecord.setId(id);
+        TranslationInstance translation = new TranslationInstance();
+        translation.setValue(identifier);
+        FieldValue value = new FieldValue();
+        value.setTranslations(List.of(translation));
+        FieldInstance field = new FieldInstance();
+        field.setDefinitionId(IDENTIFIER_DEFINITION_ID);
+        field.setRecordId(id);
+        field.setValues(List.of(value));
+        vocabRecord.getFields().add(field);
+        return vocabRecord;
+    }
+}
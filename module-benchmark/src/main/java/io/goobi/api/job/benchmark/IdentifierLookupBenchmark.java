@@ -0,0 +1,59 @@
+package io.goobi.api.job.benchmark;
+
+import io.goobi.api.job.VocabularyRecordIndex;
+import io.goobi.workflow.api.vocabulary.helper.ExtendedVocabularyRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identifier lookups in the prefetched record index
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IdentifierLookupBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    private VocabularyRecordIndex index;
+
+    // lookup order, 10% of the identifiers are unknown
+    private String[] identifiers;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        index = new VocabularyRecordIndex(BenchmarkData.IDENTIFIER_DEFINITION_ID);
+        for (int i = 0; i < size; i++) {
+            index.add(BenchmarkData.existingRecord(i + 1L, BenchmarkData.identifier(i)));
+        }
+        Random random = new Random(42);
+        identifiers = new String[Math.min(size, 100000)];
+        for (int i = 0; i < identifiers.length; i++) {
+            identifiers[i] = BenchmarkData.identifier(random.nextInt(size + size / 10));
+        }
+    }
+
+    @Benchmark
+    public ExtendedVocabularyRecord lookup() {
+        String identifier = identifiers[position];
+        position = (position + 1) % identifiers.length;
+        return index.find(identifier);
+    }
+}
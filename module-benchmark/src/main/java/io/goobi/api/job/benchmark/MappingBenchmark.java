@@ -0,0 +1,78 @@
+package io.goobi.api.job.benchmark;
+
+import io.goobi.api.job.FingerprintStore;
+import io.goobi.api.job.HerisJsonReader;
+import io.goobi.api.job.RecordMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and mapping of complete export files
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MappingBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    private Path folder;
+    private Path exportFile;
+    private RecordMapper mapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("heris-benchmark");
+        exportFile = BenchmarkData.writeExport(folder, size);
+        mapper = RecordMapper.create(BenchmarkData.mapping(), BenchmarkData.schema());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(exportFile);
+        Files.deleteIfExists(folder);
+    }
+
+    @Benchmark
+    public long parse(Blackhole blackhole) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(exportFile))) {
+            return HerisJsonReader.read(is, blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public long parseAndFingerprint(Blackhole blackhole) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(exportFile))) {
+            return HerisJsonReader.read(is, json -> blackhole.consume(FingerprintStore.hash(json)));
+        }
+    }
+
+    @Benchmark
+    public long parseAndMap(Blackhole blackhole) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(exportFile))) {
+            return HerisJsonReader.read(is, json -> blackhole.consume(mapper.apply(json, BenchmarkData.newRecord())));
+        }
+    }
+}
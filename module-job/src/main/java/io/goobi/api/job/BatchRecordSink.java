@@ -0,0 +1,18 @@
+package io.goobi.api.job;
+
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+
+import java.util.List;
+
+/**
+ * Record sink that is able to save several records with a single request, e.g. using a bulk endpoint of the vocabulary server
+ */
+public interface BatchRecordSink extends RecordSink {
+
+    /**
+     * Persist all records at once. If an exception is thrown, none of the records may be saved, as the records get saved again one by one.
+     *
+     * @param vocabRecords records to save
+     */
+    void saveAll(List<VocabularyRecord> vocabRecords);
+}
@@ -0,0 +1,138 @@
+package io.goobi.api.job;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import io.goobi.vocabulary.exchange.Vocabulary;
+import io.goobi.vocabulary.exchange.VocabularySchema;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the plugin configuration and the resolved vocabulary, shared by all runs of the job.
+ *
+ * The configuration is read again when the modification time of the configuration file changed. The vocabulary, its schema and the field mapping
+ * are resolved again after a configurable time or when the configuration changed. A run without new export file therefore does not need to call
+ * the vocabulary api at all.
+ */
+@Log4j2
+public final class ConfigurationCache {
+
+    private static final Map<String, CachedConfiguration> CONFIGURATIONS = new ConcurrentHashMap<>();
+
+    private static final Map<String, ResolvedVocabulary> VOCABULARIES = new ConcurrentHashMap<>();
+
+    private ConfigurationCache() {
+    }
+
+    /**
+     * Get the configuration of the plugin, the file is only parsed if it changed since the last call
+     *
+     * @param jobName name of the job
+     * @return the configuration, using the xpath expression engine
+     */
+
+    public static XMLConfiguration getConfiguration(String jobName) {
+        long modified = getModificationTime(Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + jobName + ".xml"));
+        CachedConfiguration cached = CONFIGURATIONS.get(jobName);
+        if (cached != null && modified != -1 && cached.modified == modified) {
+            return cached.config;
+        }
+        XMLConfiguration config = ConfigPlugins.getPluginConfig(jobName);
+        config.setExpressionEngine(new XPathExpressionEngine());
+        CONFIGURATIONS.put(jobName, new CachedConfiguration(config, modified));
+        // the mapping depends on the configuration
+        VOCABULARIES.clear();
+        return config;
+    }
+
+    /**
+     * Get the resolved vocabulary, it is resolved again if it is older than the given time
+     *
+     * @param vocabularyName name of the vocabulary
+     * @param maxAgeMillis time in milliseconds after which the vocabulary is resolved again
+     * @param resolver resolves the vocabulary using the api
+     * @return the resolved vocabulary
+     */
+
+    public static ResolvedVocabulary getVocabulary(String vocabularyName, long maxAgeMillis, Supplier<ResolvedVocabulary> resolver) {
+        ResolvedVocabulary cached = VOCABULARIES.get(vocabularyName);
+        if (cached != null && System.currentTimeMillis() - cached.resolved < maxAgeMillis) {
+            return cached;
+        }
+        ResolvedVocabulary resolved = resolver.get();
+        VOCABULARIES.put(vocabularyName, resolved);
+        return resolved;
+    }
+
+    /**
+     * Resolve the vocabulary again in the next run, e.g. because records could not be saved after a schema change
+     *
+     * @param vocabularyName name of the vocabulary
+     */
+
+    public static void invalidateVocabulary(String vocabularyName) {
+        VOCABULARIES.remove(vocabularyName);
+    }
+
+    /**
+     * Remove all cached data
+     */
+
+    public static void clear() {
+        CONFIGURATIONS.clear();
+        VOCABULARIES.clear();
+    }
+
+    private static long getModificationTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            log.debug("Cannot read modification time of {}", file, e);
+            return -1;
+        }
+    }
+
+    private static class CachedConfiguration {
+        private final XMLConfiguration config;
+        private final long modified;
+
+        private CachedConfiguration(XMLConfiguration config, long modified) {
+            this.config = config;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Vocabulary, schema and field mapping resolved from the configuration
+     */
+    public static class ResolvedVocabulary {
+        @Getter
+        private final Vocabulary vocabulary;
+        @Getter
+        private final VocabularySchema schema;
+        @Getter
+        private final long identifierFieldId;
+        @Getter
+        private final RecordMapper recordMapper;
+
+        // time of the api calls
+        private final long resolved = System.currentTimeMillis();
+
+        public ResolvedVocabulary(Vocabulary vocabulary, VocabularySchema schema, long identifierFieldId, RecordMapper recordMapper) {
+            this.vocabulary = vocabulary;
+            this.schema = schema;
+            this.identifierFieldId = identifierFieldId;
+            this.recordMapper = recordMapper;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.goobi.api.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the objects that could not be imported into a file with one json document per line.
+ *
+ * Each line contains the export file, the position of the object in the file, its identifier, the stage that failed, the error and, if available,
+ * the json object itself. The file of the previous run is replaced, it is only created if an error occurs.
+ */
+@Log4j2
+public class DeadLetterWriter implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path file;
+
+    private BufferedWriter writer;
+
+    public DeadLetterWriter(Path file) {
+        this.file = file;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+
+    /**
+     * Add a failed object
+     *
+     * @param exportFile name of the export file, or null
+     * @param index position of the object in the export file, or -1 if unknown
+     * @param identifier identifier of the object, or null
+     * @param stage stage that failed
+     * @param exception the error
+     * @param json the json object, or null
+     */
+
+    public synchronized void write(String exportFile, long index, String identifier, String stage, Exception exception, Object json) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("time", Instant.now().toString());
+        entry.put("file", exportFile);
+        entry.put("index", index);
+        entry.put("identifier", identifier);
+        entry.put("stage", stage);
+        entry.put("error", exception.getClass().getSimpleName() + ": " + exception.getMessage());
+        entry.put("object", json);
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            }
+            writer.write(MAPPER.writeValueAsString(entry));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            log.error("Cannot write failed record {} to {}", identifier, file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error(e);
+        }
+        writer = null;
+    }
+}
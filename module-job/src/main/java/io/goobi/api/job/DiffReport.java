@@ -0,0 +1,140 @@
+package io.goobi.api.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Report of a dry run, with one json document per line.
+ *
+ * Each new record is listed with its values, each changed record with the old and new values of the changed fields, each record missing in the
+ * export with its identifier and each failed record with its error. The last line contains the counters of the run. The lines are written while
+ * the export is read, the report is never held in memory.
+ */
+@Log4j2
+public class DiffReport implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path file;
+
+    private final BufferedWriter writer;
+
+    public DiffReport(Path file) throws IOException {
+        this.file = file;
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Add a record that would be created
+     *
+     * @param identifier identifier of the record
+     * @param values mapped values by field name
+     */
+
+    public void recordCreated(String identifier, Map<String, List<String>> values) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("type", "new");
+        entry.put("identifier", identifier);
+        Map<String, List<String>> fields = new LinkedHashMap<>(values);
+        fields.values().removeIf(List::isEmpty);
+        entry.put("fields", fields);
+        write(entry);
+    }
+
+    /**
+     * Add a record that would be changed, only fields with different values are listed
+     *
+     * @param identifier identifier of the record
+     * @param oldValues values before the import by field name
+     * @param newValues values after the import by field name
+     */
+
+    public void recordChanged(String identifier, Map<String, List<String>> oldValues, Map<String, List<String>> newValues) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> field : newValues.entrySet()) {
+            List<String> oldValue = oldValues.get(field.getKey());
+            if (!Objects.equals(oldValue, field.getValue())) {
+                Map<String, Object> change = new LinkedHashMap<>();
+                change.put("old", oldValue);
+                change.put("new", field.getValue());
+                changes.put(field.getKey(), change);
+            }
+        }
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("type", "changed");
+        entry.put("identifier", identifier);
+        entry.put("changes", changes);
+        write(entry);
+    }
+
+    /**
+     * Add a record that is no longer part of the export
+     *
+     * @param identifier identifier of the record
+     */
+
+    public void recordDeleted(String identifier) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("type", "deleted");
+        entry.put("identifier", identifier);
+        write(entry);
+    }
+
+    /**
+     * Add a record that could not be processed
+     *
+     * @param identifier identifier of the record, or null
+     * @param stage stage that failed
+     * @param exception the error
+     */
+
+    public void recordFailed(String identifier, String stage, Exception exception) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("type", "failed");
+        entry.put("identifier", identifier);
+        entry.put("stage", stage);
+        entry.put("error", exception.getClass().getSimpleName() + ": " + exception.getMessage());
+        write(entry);
+    }
+
+    /**
+     * Add the counters of the run as last line
+     *
+     * @param summary counters and timings
+     */
+
+    public void summary(Map<String, Object> summary) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("type", "summary");
+        entry.putAll(summary);
+        write(entry);
+    }
+
+    private synchronized void write(Map<String, Object> entry) {
+        try {
+            writer.write(MAPPER.writeValueAsString(entry));
+            writer.newLine();
+        } catch (IOException e) {
+            log.error("Cannot write to {}", file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.goobi.api.job;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Identity of an export file: name, size and modification time
+ */
+public class ExportFile {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final long size;
+
+    // modification time in milliseconds
+    @Getter
+    private final long modified;
+
+    // local copy of the file
+    @Getter
+    @Setter
+    private Path localFile;
+
+    public ExportFile(String name, long size, long modified) {
+        this.name = name;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ExportFile)) {
+            return false;
+        }
+        ExportFile other = (ExportFile) obj;
+        return size == other.size && modified == other.modified && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, size, modified);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + size + " bytes)";
+    }
+}
@@ -0,0 +1,160 @@
+package io.goobi.api.job;
+
+import com.jayway.jsonpath.JsonPath;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapping of a json element to a field of the vocabulary, resolved once per configuration
+ */
+public class FieldMapping {
+
+    // name of the vocabulary field
+    @Getter
+    private final String fieldName;
+
+    // precompiled expression to read the value
+    @Getter
+    private final JsonPath jsonPath;
+
+    // id of the field definition in the vocabulary schema
+    @Getter
+    private final long definitionId;
+
+    @Getter
+    private final FieldOptions options;
+
+    public FieldMapping(String fieldName, String jsonPath, long definitionId) {
+        this(fieldName, jsonPath, definitionId, FieldOptions.DEFAULT);
+    }
+
+    public FieldMapping(String fieldName, String jsonPath, long definitionId, FieldOptions options) {
+        this.fieldName = fieldName;
+        this.jsonPath = JsonPath.compile(jsonPath);
+        this.definitionId = definitionId;
+        this.options = options;
+    }
+
+    /**
+     * Read the value of this field from a json object
+     *
+     * @param jsonRecord parsed json object
+     * @return the value or null
+     */
+
+    public Object read(Object jsonRecord) {
+        return jsonPath.read(jsonRecord);
+    }
+
+    /**
+     * Read and convert the values of this field. Each value is an array of language and text pairs, the language is null for values without
+     * language.
+     *
+     * @param jsonRecord parsed json object
+     * @return the values or null, if the field has no value
+     * @throws IllegalArgumentException if the json value does not match the configured options
+     */
+
+    public List<String[]> readValues(Object jsonRecord) {
+        return convert(read(jsonRecord));
+    }
+
+    /*
+     * Convert a json value, arrays are converted into several values
+     */
+    private List<String[]> convert(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof List)) {
+            String[] translations = convertValue(value);
+            return translations == null ? null : Collections.singletonList(translations);
+        }
+        List<?> elements = (List<?>) value;
+        if (!options.isMultiValue()) {
+            if (elements.size() > 1) {
+                throw new IllegalArgumentException(
+                        "Field " + fieldName + " contains " + elements.size() + " values, but is not configured as multiValue");
+            }
+            return elements.isEmpty() ? null : convert(elements.get(0));
+        }
+        List<String[]> values = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            if (element instanceof List) {
+                throw new IllegalArgumentException("Field " + fieldName + " contains nested arrays");
+            }
+            String[] translations = element == null ? null : convertValue(element);
+            if (translations != null) {
+                values.add(translations);
+            }
+        }
+        return values.isEmpty() ? null : values;
+    }
+
+    /*
+     * Convert a single value or localised object into language and text pairs
+     */
+    private String[] convertValue(Object value) {
+        List<String> languages = options.getLanguages();
+        if (value instanceof Map) {
+            if (languages.isEmpty()) {
+                throw new IllegalArgumentException(
+                        "Value of field " + fieldName + " is not a simple value, configure the languages to read: " + value);
+            }
+            Map<?, ?> localised = (Map<?, ?>) value;
+            String[] pairs = new String[languages.size() * 2];
+            int length = 0;
+            for (String language : languages) {
+                Object text = localised.get(language);
+                if (text != null) {
+                    pairs[length++] = language;
+                    pairs[length++] = convertSimpleValue(text);
+                }
+            }
+            if (length == 0) {
+                return null;
+            }
+            return length == pairs.length ? pairs : Arrays.copyOf(pairs, length);
+        }
+        return new String[] { languages.isEmpty() ? null : languages.get(0), convertSimpleValue(value) };
+    }
+
+    /*
+     * Convert a simple json value according to the configured type
+     */
+    private String convertSimpleValue(Object value) {
+        switch (options.getType()) {
+            case NUMBER:
+                if (value instanceof Number || value instanceof String) {
+                    try {
+                        BigDecimal number = new BigDecimal(value.toString().trim());
+                        return number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString();
+                    } catch (NumberFormatException e) {
+                        // reported below
+                    }
+                }
+                throw new IllegalArgumentException("Value of field " + fieldName + " is not a number: " + value);
+            case BOOLEAN:
+                if (value instanceof Boolean) {
+                    return value.toString();
+                } else if ("true".equalsIgnoreCase(String.valueOf(value)) || "false".equalsIgnoreCase(String.valueOf(value))) {
+                    return String.valueOf(value).toLowerCase();
+                }
+                throw new IllegalArgumentException("Value of field " + fieldName + " is not a boolean: " + value);
+            case STRING:
+            default:
+                if (value instanceof String) {
+                    return (String) value;
+                } else if (value instanceof Number || value instanceof Boolean) {
+                    return value.toString();
+                }
+                throw new IllegalArgumentException("Value of field " + fieldName + " is not a simple value: " + value);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.goobi.api.job;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Conversion settings of a configured field: value type, multiple values and languages of localised values
+ */
+public class FieldOptions {
+
+    /**
+     * Expected type of the json values
+     */
+    public enum Type {
+        // strings, numbers and booleans are stored as text
+        STRING,
+        // numbers or numeric strings, stored in plain notation without trailing zeros
+        NUMBER,
+        // booleans or the strings true and false
+        BOOLEAN
+    }
+
+    public static final FieldOptions DEFAULT = new FieldOptions(Type.STRING, false, Collections.emptyList());
+
+    @Getter
+    private final Type type;
+
+    // arrays are mapped to one value per element
+    @Getter
+    private final boolean multiValue;
+
+    // languages to read from localised objects, the first language is used for simple values
+    @Getter
+    private final List<String> languages;
+
+    public FieldOptions(Type type, boolean multiValue, List<String> languages) {
+        this.type = type;
+        this.multiValue = multiValue;
+        this.languages = List.copyOf(languages);
+    }
+
+    /**
+     * Get the configured type of a field, the case is ignored
+     *
+     * @param fieldName name of the field
+     * @param value configured type
+     * @return the type
+     * @throws IllegalArgumentException if the type is unknown, the message names the field and the allowed types
+     */
+
+    public static Type parseType(String fieldName, String value) {
+        for (Type type : Type.values()) {
+            if (type.name().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        String allowed = Arrays.stream(Type.values()).map(t -> t.name().toLowerCase()).collect(Collectors.joining(", "));
+        throw new IllegalArgumentException("Field \"" + fieldName + "\" has the unknown type \"" + value + "\", allowed types are " + allowed);
+    }
+
+    public boolean isDefault() {
+        return type == Type.STRING && !multiValue && languages.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "type=" + type + ", multiValue=" + multiValue + ", languages=" + languages;
+    }
+}
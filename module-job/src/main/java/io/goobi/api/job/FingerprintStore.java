@@ -0,0 +1,239 @@
+package io.goobi.api.job;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent store of a fingerprint per HERIS identifier.
+ *
+ * The fingerprint is a 64 bit hash of the json object from the last successful import. Objects with an unchanged fingerprint can be skipped
+ * without mapping, searching or saving them. Identifiers that were imported before but are missing in the current export are reported as deleted.
+ */
+@Log4j2
+public class FingerprintStore {
+
+    private static final int MAGIC = 0x48455249; // HERI
+    private static final int VERSION = 1;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path file;
+
+    // hash of the field mapping, a changed mapping invalidates all fingerprints
+    @Getter
+    private final long mappingSignature;
+
+    private final Map<String, Long> fingerprints = new ConcurrentHashMap<>();
+
+    // fingerprints of records that are not saved yet
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    private FingerprintStore(Path file, long mappingSignature) {
+        this.file = file;
+        this.mappingSignature = mappingSignature;
+    }
+
+    /**
+     * Load the store from the given file. If the file does not exist, is unreadable or was created with a different mapping, an empty store is
+     * returned.
+     *
+     * @param file store file
+     * @param mappingSignature hash of the current field mapping
+     * @return the store
+     */
+
+    public static FingerprintStore load(Path file, long mappingSignature) {
+        FingerprintStore store = new FingerprintStore(file, mappingSignature);
+        if (!Files.exists(file)) {
+            return store;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Ignoring fingerprint file {}, unknown format", file);
+                return store;
+            }
+            if (in.readLong() != mappingSignature) {
+                log.info("Field mapping changed since the last import, all records get imported again");
+                return store;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                store.fingerprints.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException e) {
+            log.error("Cannot read fingerprint file {}, all records get imported again", file, e);
+            store.fingerprints.clear();
+        }
+        return store;
+    }
+
+    /**
+     * Check if the object with the given identifier is unchanged since the last import. The identifier is marked as seen in this run.
+     *
+     * @param identifier HERIS identifier
+     * @param fingerprint hash of the current object
+     * @return true if the stored fingerprint is equal
+     */
+
+    public boolean matches(String identifier, long fingerprint) {
+        seen.add(identifier);
+        Long stored = fingerprints.get(identifier);
+        return stored != null && stored == fingerprint;
+    }
+
+    /**
+     * Store the fingerprint of an imported object
+     *
+     * @param identifier HERIS identifier
+     * @param fingerprint hash of the object
+     */
+
+    public void put(String identifier, long fingerprint) {
+        fingerprints.put(identifier, fingerprint);
+    }
+
+    /**
+     * Remember the fingerprint of an object until its record is saved
+     *
+     * @param identifier HERIS identifier
+     * @param fingerprint hash of the object
+     */
+
+    public void stage(String identifier, long fingerprint) {
+        pending.put(identifier, fingerprint);
+    }
+
+    /**
+     * Store the staged fingerprint after the record was saved successfully
+     *
+     * @param identifier HERIS identifier
+     */
+
+    public void commit(String identifier) {
+        if (identifier == null) {
+            return;
+        }
+        Long fingerprint = pending.remove(identifier);
+        if (fingerprint != null) {
+            fingerprints.put(identifier, fingerprint);
+        }
+    }
+
+    /**
+     * Get all identifiers that are stored from a previous import, but were not part of the current export
+     *
+     * @return sorted list of identifiers
+     */
+
+    public List<String> getMissingIdentifiers() {
+        List<String> missing = new ArrayList<>();
+        for (String identifier : fingerprints.keySet()) {
+            if (!seen.contains(identifier)) {
+                missing.add(identifier);
+            }
+        }
+        Collections.sort(missing);
+        return missing;
+    }
+
+    /**
+     * Forget the given identifiers
+     *
+     * @param identifiers identifiers to remove
+     */
+
+    public void removeAll(List<String> identifiers) {
+        identifiers.forEach(fingerprints::remove);
+    }
+
+    public int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * Write the store. The data is written into a temporary file first and moved afterwards, so an interrupted write keeps the old state.
+     *
+     * @throws IOException if the file cannot be written
+     */
+
+    public void save() throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mappingSignature);
+            // copy first, the map must not change between count and entries
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(fingerprints.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Long> entry : entries) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Calculate a 64 bit FNV-1a hash over a json structure of maps, lists and simple values
+     *
+     * @param json object to hash
+     * @return the hash
+     */
+
+    public static long hash(Object json) {
+        return hash(FNV_OFFSET, json);
+    }
+
+    private static long hash(long h, Object json) {
+        if (json instanceof Map) {
+            h = hash(h, '{');
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) json).entrySet()) {
+                h = hash(h, String.valueOf(entry.getKey()));
+                h = hash(h, ':');
+                h = hash(h, entry.getValue());
+            }
+            return hash(h, '}');
+        } else if (json instanceof List) {
+            h = hash(h, '[');
+            for (Object value : (List<?>) json) {
+                h = hash(h, value);
+                h = hash(h, ',');
+            }
+            return hash(h, ']');
+        } else if (json == null) {
+            return hash(h, '\u0000');
+        } else {
+            h = hash(h, '"');
+            return hash(h, json.toString());
+        }
+    }
+
+    private static long hash(long h, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            h = hash(h, value.charAt(i));
+        }
+        return h;
+    }
+
+    private static long hash(long h, char c) {
+        return (h ^ c) * FNV_PRIME;
+    }
+}
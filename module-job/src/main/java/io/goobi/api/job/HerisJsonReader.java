@@ -0,0 +1,149 @@
+package io.goobi.api.job;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streaming reader for HERIS export files.
+ *
+ * The export is a large json array of flat objects. Instead of parsing the whole document, the array is read element by element, so only the
+ * current object is held in memory. Each element is converted into plain java maps and lists, which can be evaluated with JsonPath.
+ */
+public class HerisJsonReader {
+
+    // the stream belongs to the caller, e.g. a streamed download must still be finished after the json document was read
+    private static final ObjectMapper MAPPER = new ObjectMapper().configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private HerisJsonReader() {
+    }
+
+    /**
+     * Check if the file name belongs to a supported export format: plain json, gzip or zstd compressed json or a zip archive
+     *
+     * @param filename name of the file
+     * @return true if the file can be read
+     */
+
+    public static boolean isSupportedFile(String filename) {
+        String name = filename.toLowerCase();
+        return name.endsWith(".json") || name.endsWith(".json.gz") || name.endsWith(".json.zst") || name.endsWith(".zip");
+    }
+
+    /**
+     * Open the export file. Compressed files are decompressed while reading, for zip archives the first json file of the archive is read.
+     *
+     * @param file file to open
+     * @return stream of the json content
+     * @throws IOException if the file cannot be opened or a zip archive does not contain a json file
+     */
+
+    public static InputStream open(Path file) throws IOException {
+        InputStream is = new BufferedInputStream(Files.newInputStream(file));
+        try {
+            return decompress(is, file.getFileName().toString());
+        } catch (IOException | RuntimeException e) {
+            is.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wrap the stream according to the compression indicated by the file name
+     *
+     * @param is raw stream
+     * @param filename name of the file
+     * @return stream of the json content
+     * @throws IOException if the stream cannot be decompressed
+     */
+
+    public static InputStream decompress(InputStream is, String filename) throws IOException {
+        String name = filename.toLowerCase();
+        if (name.endsWith(".gz")) {
+            return new GZIPInputStream(is, BUFFER_SIZE);
+        } else if (name.endsWith(".zst")) {
+            try {
+                return new BufferedInputStream(ZstdSupport.decompress(is), BUFFER_SIZE);
+            } catch (LinkageError e) {
+                throw new IOException("Reading " + filename + " requires the zstd-jni library in the lib folder of Goobi workflow", e);
+            }
+        } else if (name.endsWith(".zip")) {
+            ZipInputStream zip = new ZipInputStream(is);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".json")) {
+                    return new BufferedInputStream(zip, BUFFER_SIZE);
+                }
+            }
+            throw new IOException("No json file found in " + filename);
+        }
+        return is;
+    }
+
+    /**
+     * Read the elements of the top level array (or the values of the top level object) and pass them one by one to the consumer
+     *
+     * @param is stream to read, it is not closed by this method
+     * @param consumer receives each element
+     * @return number of elements read
+     * @throws IOException if the stream cannot be read or contains invalid json
+     */
+
+    public static long read(InputStream is, Consumer<Object> consumer) throws IOException {
+        return read(is, 0, consumer);
+    }
+
+    /**
+     * Read the elements of the top level array (or the values of the top level object) and pass them one by one to the consumer. The first
+     * elements are skipped without converting them.
+     *
+     * @param is stream to read, it is not closed by this method
+     * @param skip number of elements to skip
+     * @param consumer receives each element
+     * @return number of elements passed to the consumer
+     * @throws IOException if the stream cannot be read or contains invalid json
+     */
+
+    public static long read(InputStream is, long skip, Consumer<Object> consumer) throws IOException {
+        long count = 0;
+        long skipped = 0;
+        try (JsonParser parser = MAPPER.getFactory().createParser(is)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                    if (skipped < skip) {
+                        parser.skipChildren();
+                        skipped++;
+                        continue;
+                    }
+                    consumer.accept(MAPPER.readValue(parser, Object.class));
+                    count++;
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                    parser.nextToken();
+                    if (skipped < skip) {
+                        parser.skipChildren();
+                        skipped++;
+                        continue;
+                    }
+                    consumer.accept(MAPPER.readValue(parser, Object.class));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
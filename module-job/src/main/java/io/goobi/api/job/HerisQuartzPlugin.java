@@ -1,19 +1,12 @@
 package io.goobi.api.job;
 
-import com.jayway.jsonpath.Configuration;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jayway.jsonpath.JsonPath;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.ChannelSftp.LsEntry;
-import com.jcraft.jsch.JSch;
-import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 import com.jcraft.jsch.SftpException;
-import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.helper.StorageProvider;
-import io.goobi.vocabulary.exchange.FieldDefinition;
-import io.goobi.vocabulary.exchange.FieldInstance;
-import io.goobi.vocabulary.exchange.FieldValue;
-import io.goobi.vocabulary.exchange.TranslationInstance;
 import io.goobi.vocabulary.exchange.Vocabulary;
 import io.goobi.vocabulary.exchange.VocabularyRecord;
 import io.goobi.vocabulary.exchange.VocabularySchema;
@@ -25,31 +18,55 @@ import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
-import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
-import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 import org.apache.commons.lang.StringUtils;
 import org.goobi.production.flow.jobs.AbstractGoobiJob;
+import org.quartz.DisallowConcurrentExecution;
 
-import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Properties;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Log4j2
+@DisallowConcurrentExecution
 public class HerisQuartzPlugin extends AbstractGoobiJob {
 
+    // state files within the heris folder
+    private static final String FINGERPRINT_FILE = ".heris-fingerprints";
+    private static final String DELETED_RECORDS_FILE = "heris-deleted-records.txt";
+    private static final String ORPHANED_RECORDS_FILE = "heris-orphaned-records.txt";
+    private static final String DEAD_LETTER_FILE = "heris-failed-records.jsonl";
+    private static final String DRY_RUN_FILE = "heris-dry-run.jsonl";
+    private static final String LEDGER_FILE = ".heris-imported-files";
+    private static final String CHECKPOINT_FILE = ".heris-checkpoint";
+    private static final String REPORT_FILE_PREFIX = "heris-import-report";
+    private static final String REPORT_FILE = REPORT_FILE_PREFIX + ".json";
+    private static final String PART_FILE_SUFFIX = ".part";
+    private static final String LOCK_FILE_SUFFIX = ".lock";
+
     // folder where the gets stored temporary
     @Getter
     @Setter
@@ -77,22 +94,77 @@ public class HerisQuartzPlugin extends AbstractGoobiJob {
     @Getter
     private int port = 22;
 
+    // timeouts in seconds
+    @Getter
+    @Setter
+    private int sftpConnectTimeout = 30;
+    @Getter
+    @Setter
+    private int sftpIoTimeout = 60;
+
+    // retries of failed sftp operations, the delay in seconds gets doubled after each retry
+    @Getter
+    @Setter
+    private int sftpRetries = 3;
+    @Getter
+    @Setter
+    private int sftpRetryDelay = 2;
+
     // downloaded json file
     @Getter
     @Setter
     private Path jsonFile;
 
-    // name of the vocabulary to enrich
+    // identity of the latest file
     @Getter
-    private String vocabularyName;
+    private ExportFile exportFile;
 
+    // import all files that were not imported yet instead of the newest file only
     @Getter
-    private Vocabulary vocabulary;
+    @Setter
+    private boolean importAllFiles;
+    // read the files in parallel, only if they are independent parts of the same export
+    @Getter
+    @Setter
+    private boolean parallelFiles;
+    // the files contain only the changes since the previous export
+    @Getter
+    @Setter
+    private boolean deltaFiles;
+
+    // files imported in previous runs
+    private ImportLedger importLedger;
 
+    // number of completed records after which the progress is stored, 0 to disable
     @Getter
-    private List<VocabularyRecord> parsedRecords = Collections.emptyList();
+    @Setter
+    private int checkpointInterval;
 
-    private VocabularySchema vocabularySchema;
+    // progress of the current files, to continue an interrupted import
+    private ImportCheckpoint checkpoint;
+
+    // number of failed records after which the import is cancelled, 0 for no limit
+    @Getter
+    @Setter
+    private int errorThreshold;
+
+    // receives the records that could not be imported
+    private DeadLetterWriter deadLetters;
+
+    // only report the changes, without saving anything
+    @Getter
+    @Setter
+    private boolean dryRun;
+
+    // changes found in a dry run
+    private DiffReport diffReport;
+
+    // name of the vocabulary to enrich
+    @Getter
+    private String vocabularyName;
+
+    @Getter
+    private Vocabulary vocabulary;
 
     private long vocabularyId;
 
@@ -100,15 +172,113 @@ public class HerisQuartzPlugin extends AbstractGoobiJob {
     @Getter
     private Map<String, String> jsonMapping;
 
+    // type, multiple values and languages of fields with non default settings
+    @Getter
+    private Map<String, FieldOptions> fieldOptions;
+
 
     // identifier fields in vocabulary and json file
     private String identifierVocabField;
     private long identifierVocabFieldId;
     private String identifierJsonField;
+    private JsonPath identifierPath;
+
+    // mapping resolved against the vocabulary schema
+    @Getter
+    private RecordMapper recordMapper;
 
     @Setter
     private boolean useSFTP;
 
+    // load all vocabulary records at once instead of searching each identifier
+    @Getter
+    @Setter
+    private boolean prefetch;
+    private int prefetchPageSize = 1000;
+
+    // seconds after which vocabulary and schema are requested again
+    @Getter
+    @Setter
+    private int vocabularyCacheTime = 3600;
+
+    // save stage, number of threads and records waiting for a thread
+    @Getter
+    private int saveThreads = 1;
+    @Getter
+    private int saveQueueSize = 500;
+    // number of records saved within one task
+    @Getter
+    private int saveBatchSize = 1;
+
+    // read the export while it is downloaded from the sftp server
+    @Getter
+    @Setter
+    private boolean streamDownload;
+    // mapping stage, number of threads and objects waiting for each thread
+    @Getter
+    @Setter
+    private int mappingThreads = 1;
+    @Getter
+    @Setter
+    private int mappingQueueSize = 100;
+
+    // connection used to stream the files, only open during the import
+    private SftpConnection sftpConnection;
+
+    // part of the objects imported by this node, null to import all objects
+    @Getter
+    @Setter
+    private Shard shard;
+
+    // counters of the current run
+    @Getter
+    private ImportStatistics statistics = new ImportStatistics();
+
+    // prefetched records, null if prefetching is disabled
+    private VocabularyRecordIndex recordIndex;
+
+    // creates empty records, null to request them from the vocabulary api
+    private final Supplier<ExtendedVocabularyRecord> recordFactory;
+
+    // skip objects that did not change since the last import
+    @Getter
+    @Setter
+    private boolean useFingerprints;
+    // delete records of objects missing in the export instead of only reporting them
+    private boolean deleteMissingRecords;
+    // number of missing records up to which they get deleted, -1 for no limit
+    private int maxDeletedRecords;
+    private FingerprintStore fingerprints;
+
+    // compare the vocabulary with the identifiers of the export after a complete import
+    @Getter
+    @Setter
+    private boolean reconcile;
+    // delete orphaned records instead of only reporting them
+    private boolean deleteOrphans;
+    // number of orphaned records up to which they get deleted, -1 for no limit
+    private int maxOrphans;
+    // number of deleted records after which the progress is logged
+    private int reconcileLogInterval;
+    // identifiers of the current export, null if reconciliation is disabled
+    private IdentifierSet exportIdentifiers;
+
+    public HerisQuartzPlugin() {
+        recordFactory = null;
+    }
+
+    /*
+     * Convert files without the vocabulary api, used by the pipeline benchmark. Existing records are only looked up in the given index, new
+     * records are created by the given factory.
+     */
+    HerisQuartzPlugin(RecordMapper mapper, String identifierJsonPath, VocabularyRecordIndex index, Supplier<ExtendedVocabularyRecord> factory) {
+        recordMapper = mapper;
+        identifierJsonField = identifierJsonPath;
+        identifierPath = JsonPath.compile(identifierJsonPath);
+        recordIndex = index;
+        recordFactory = factory;
+    }
+
     /**
      * When called, this method gets executed
      * 
@@ -119,25 +289,373 @@ public class HerisQuartzPlugin extends AbstractGoobiJob {
     @Override
     public void execute() {
 
-        parseConfiguration();
-        // search for latest json file
-        jsonFile = getLatestHerisFile();
+        statistics = new ImportStatistics();
+        readConfiguration();
+
+        // skip this run if the previous import of the vocabulary is still running
+        Path lockFile = getStateFile(".heris-" + vocabularyName.replaceAll("[^A-Za-z0-9_-]", "_") + LOCK_FILE_SUFFIX);
+        try (ImportLock lock = ImportLock.tryAcquire(lockFile)) {
+            if (lock == null) {
+                log.info("Another import of vocabulary {} is still running, skipping this run", vocabularyName);
+                return;
+            }
+            importVocabulary();
+        } catch (IOException e) {
+            log.error("Cannot create lock file {}", lockFile, e);
+        }
+    }
+
+    /*
+     * Download and import the pending files, called while the import lock is held
+     */
+    private void importVocabulary() {
+        // search for new json files, the vocabulary is only requested if there is something to import
+        List<ExportFile> files;
+        SftpConnection connection = useSFTP ? openSftpConnection() : null;
+        try {
+            files = findPendingFiles(connection, importAllFiles);
+            if (files.isEmpty()) {
+                log.info("No import file found, continue");
+                return;
+            }
+            if (connection != null && streamDownload && !parallelFiles) {
+                // the files are downloaded while they are read, keep the connection open
+                for (ExportFile file : files) {
+                    Path destination = Paths.get(herisFolder, file.getName());
+                    if (Files.exists(destination) && Files.size(destination) == file.getSize()) {
+                        file.setLocalFile(destination);
+                    }
+                }
+                sftpConnection = connection;
+            } else {
+                files = downloadFiles(connection, files);
+            }
+        } catch (IOException e) {
+            log.error(e);
+            return;
+        } finally {
+            if (connection != null && sftpConnection == null) {
+                connection.close();
+            }
+        }
+        try {
+            importPendingFiles(files);
+        } finally {
+            if (sftpConnection != null) {
+                sftpConnection.close();
+                sftpConnection = null;
+            }
+        }
+    }
 
-        if (jsonFile == null) {
-            log.info("No import file found, continue");
+    /*
+     * Import the files found in this run
+     */
+    private void importPendingFiles(List<ExportFile> files) {
+        if (files.isEmpty()) {
             return;
         }
+        resolveConfiguredVocabulary();
+
+        // records of a previous run are not used
+        recordIndex = null;
+        if (prefetch) {
+            long start = System.nanoTime();
+            recordIndex = VocabularyRecordIndex.load(VocabularyAPIManager.getInstance().vocabularyRecords(), vocabularyId, identifierVocabFieldId,
+                    prefetchPageSize);
+            statistics.addStageTime(ImportStatistics.Stage.PREFETCH, start);
+        }
+
+        if (useFingerprints) {
+            fingerprints = FingerprintStore.load(getStateFile(FINGERPRINT_FILE), getMappingSignature());
+        }
 
-        // file parsing and conversion into vocabulary records
-        parsedRecords = generateRecordsFromFile();
+        boolean resumed = false;
+        checkpoint = null;
+        if (checkpointInterval > 0 && !dryRun) {
+            checkpoint = ImportCheckpoint.load(getStateFile(CHECKPOINT_FILE), checkpointInterval);
+            checkpoint.retainAll(files);
+            for (ExportFile file : files) {
+                resumed |= checkpoint.getProgress(file).getCompleted() > 0;
+            }
+        }
+
+        exportIdentifiers = reconcile ? new IdentifierSet() : null;
+
+        diffReport = null;
+        if (dryRun) {
+            try {
+                diffReport = new DiffReport(getStateFile(DRY_RUN_FILE));
+            } catch (IOException e) {
+                log.error("Cannot create dry run report", e);
+                return;
+            }
+        }
 
-        // save records
+        // stream the files, convert each object and pass it to the save stage
         VocabularyRecordAPI recordAPI = VocabularyAPIManager.getInstance().vocabularyRecords();
-        parsedRecords.forEach(recordAPI::save);
+        RecordSink sink = r -> {
+            long start = System.nanoTime();
+            try {
+                recordAPI.save(r);
+            } finally {
+                statistics.addApiCall("save", start);
+                statistics.addStageTime(ImportStatistics.Stage.SAVE, start);
+            }
+        };
+        // a dry run does not save anything
+        RecordSaver saver = new RecordSaver(dryRun ? r -> {
+        } : sink, saveThreads, saveQueueSize, saveBatchSize);
+        if (fingerprints != null) {
+            saver.setSavedListener(r -> fingerprints.commit(VocabularyRecordIndex.getFirstValue(r, identifierVocabFieldId)));
+        }
+        if (checkpoint != null) {
+            saver.setFinishedListener(checkpoint::finished);
+        }
+        deadLetters = dryRun ? null : new DeadLetterWriter(getStateFile(DEAD_LETTER_FILE));
+        saver.setFailureListener((r, e) -> {
+            recordFailed(null, -1, VocabularyRecordIndex.getFirstValue(r, identifierVocabFieldId), "save", e, null);
+            if (isErrorThresholdExceeded() && !saver.isCancelled()) {
+                // e.g. the vocabulary server is not available, stop reading and saving
+                log.error("Import cancelled, {} records failed", statistics.getFailedRecords());
+                saver.cancel();
+            }
+        });
+        List<ExportFile> importedFiles;
+        try {
+            importedFiles = importFiles(files, saver);
+        } finally {
+            saver.close();
+            if (deadLetters != null) {
+                deadLetters.close();
+            }
+        }
+
+        if (!saver.getFailures().isEmpty()) {
+            // the schema may have changed, request it again in the next run
+            ConfigurationCache.invalidateVocabulary(vocabularyName);
+        }
+
+        if (diffReport != null) {
+            finishDryRun(files, importedFiles);
+            return;
+        }
 
-        // delete downloaded file
+        boolean aborted = isErrorThresholdExceeded();
+        statistics.setAborted(aborted);
+        if (aborted) {
+            log.error("{} records failed, see {}. The import is cancelled, the files get imported again in the next run",
+                    statistics.getFailedRecords(), getStateFile(DEAD_LETTER_FILE).getFileName());
+        }
+        // files are only marked as imported if the run was not cancelled
+        List<ExportFile> completedFiles = aborted ? new ArrayList<>() : importedFiles;
+
+        if (fingerprints != null) {
+            // missing identifiers can only be detected if all files were read completely
+            if (resumed) {
+                log.info("Import was resumed, skipping the detection of deleted records");
+            } else if (completedFiles.size() == files.size() && isCompleteExport(files)) {
+                handleDeletedRecords(fingerprints.getMissingIdentifiers());
+            }
+            try {
+                fingerprints.save();
+            } catch (IOException e) {
+                log.error(e);
+            }
+        }
+        if (exportIdentifiers != null) {
+            // orphans can only be detected if the complete export was read
+            if (resumed) {
+                log.info("Import was resumed, skipping the reconciliation of the vocabulary");
+            } else if (completedFiles.size() == files.size() && isCompleteExport(files)) {
+                reconcileVocabulary(identifier -> {
+                });
+            }
+            exportIdentifiers = null;
+        }
+        log.info("Imported {} of {} files: {}", importedFiles.size(), files.size(), statistics);
+        writeReport(importedFiles);
+
+        // remember the files, so they are not imported again, and delete them
+        completedFiles.forEach(importLedger::add);
         try {
-            StorageProvider.getInstance().deleteFile(jsonFile);
+            importLedger.save();
+        } catch (IOException e) {
+            log.error(e);
+        }
+        for (ExportFile file : completedFiles) {
+            // a shared file is deleted by the last shard
+            if (shard != null && !isImportedByAllShards(file)) {
+                continue;
+            }
+            try {
+                if (Files.exists(file.getLocalFile())) {
+                    StorageProvider.getInstance().deleteFile(file.getLocalFile());
+                }
+            } catch (IOException e) {
+                log.error(e);
+            }
+        }
+        if (shard != null) {
+            mergeShardReports(importedFiles);
+        }
+        if (checkpoint != null) {
+            // a cancelled run starts from the beginning again, so the failed records are retried
+            (aborted ? files : completedFiles).forEach(checkpoint::remove);
+            try {
+                checkpoint.save();
+            } catch (IOException e) {
+                log.error(e);
+            }
+        }
+    }
+
+    /*
+     * Complete the report of a dry run. Nothing else is stored, the next run imports the same files.
+     */
+    private void finishDryRun(List<ExportFile> files, List<ExportFile> importedFiles) {
+        boolean complete = importedFiles.size() == files.size() && isCompleteExport(files);
+        if (fingerprints != null && complete) {
+            fingerprints.getMissingIdentifiers().forEach(diffReport::recordDeleted);
+        }
+        if (exportIdentifiers != null && complete) {
+            reconcileVocabulary(diffReport::recordDeleted);
+            exportIdentifiers = null;
+        }
+        diffReport.summary(statistics.toReport(importedFiles));
+        diffReport.close();
+        diffReport = null;
+        log.info("Dry run of {} files finished, see {}: {}", importedFiles.size(), getStateFile(DRY_RUN_FILE).getFileName(), statistics);
+    }
+
+    /*
+     * Read the files and pass the converted records to the save stage. The files are read one after another in the order of their modification
+     * time, if a file fails, the remaining files are skipped. If configured, the files are treated as independent parts and read in parallel.
+     * 
+     * returns the files that were read completely
+     */
+    private List<ExportFile> importFiles(List<ExportFile> files, RecordSaver saver) {
+        Consumer<VocabularyRecord> consumer = r -> {
+            if (r != null) {
+                saver.submit(r);
+            }
+        };
+        List<ExportFile> importedFiles = new ArrayList<>();
+        if (!parallelFiles || files.size() == 1) {
+            for (ExportFile file : files) {
+                try {
+                    long count = file.getLocalFile() != null ? processFile(file.getLocalFile(), getProgress(file), consumer)
+                            : processDownload(file, getProgress(file), consumer);
+                    log.info("Read {} records from {}", count, file);
+                    importedFiles.add(file);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Import of {} failed, skipping the remaining files", file, e);
+                    break;
+                }
+            }
+            return importedFiles;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        Map<ExportFile, Future<Long>> results = new LinkedHashMap<>();
+        for (ExportFile file : files) {
+            results.put(file, executor.submit(() -> processFile(file.getLocalFile(), getProgress(file), consumer)));
+        }
+        executor.shutdown();
+        for (Map.Entry<ExportFile, Future<Long>> result : results.entrySet()) {
+            try {
+                log.info("Read {} records from {}", result.getValue().get(), result.getKey());
+                importedFiles.add(result.getKey());
+            } catch (ExecutionException e) {
+                log.error("Import of {} failed", result.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                break;
+            }
+        }
+        return importedFiles;
+    }
+
+    /*
+     * Check the ledgers of all shards
+     */
+    private boolean isImportedByAllShards(ExportFile file) {
+        for (int i = 1; i <= shard.getCount(); i++) {
+            Path ledgerFile = Paths.get(herisFolder, new Shard(i, shard.getCount()).getFileName(LEDGER_FILE));
+            if (i != shard.getIndex() && !ImportLedger.load(ledgerFile).contains(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Merge the reports of all shards into the common report, once every shard has imported the same files
+     */
+    private void mergeShardReports(List<ExportFile> files) {
+        List<String> fileNames = files.stream().map(ExportFile::getName).collect(Collectors.toList());
+        Map<String, Map<String, Object>> reports = new LinkedHashMap<>();
+        ObjectMapper mapper = new ObjectMapper();
+        for (int i = 1; i <= shard.getCount(); i++) {
+            Shard other = new Shard(i, shard.getCount());
+            Path reportFile = Paths.get(herisFolder, other.getFileName(REPORT_FILE));
+            if (!Files.exists(reportFile)) {
+                return;
+            }
+            try {
+                Map<String, Object> report = mapper.readValue(reportFile.toFile(), new TypeReference<Map<String, Object>>() {
+                });
+                if (!fileNames.equals(report.get("files"))) {
+                    // the shard did not finish the same files yet
+                    return;
+                }
+                reports.put(other.toString(), report);
+            } catch (IOException e) {
+                log.error("Cannot read report {}", reportFile, e);
+                return;
+            }
+        }
+        try {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(Paths.get(herisFolder, REPORT_FILE).toFile(), ImportStatistics.mergeReports(reports));
+            log.info("Merged the reports of {} shards into {}", reports.size(), REPORT_FILE);
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+
+    /*
+     * Path of a file within the heris folder that is only used by this shard
+     */
+    private Path getStateFile(String fileName) {
+        return Paths.get(herisFolder, shard == null ? fileName : shard.getFileName(fileName));
+    }
+
+    private ImportCheckpoint.Progress getProgress(ExportFile file) {
+        return checkpoint != null ? checkpoint.getProgress(file) : null;
+    }
+
+    /*
+     * Hash of the field configuration and the target vocabulary, the options are only included for fields with non default settings. Another or a
+     * recreated vocabulary gets a new signature, so the fingerprints of the previous vocabulary are not used.
+     */
+    private long getMappingSignature() {
+        Map<String, String> mapping = new TreeMap<>(jsonMapping);
+        fieldOptions.forEach((field, options) -> mapping.put(field, mapping.get(field) + " " + options));
+        Map<String, Object> signature = new LinkedHashMap<>();
+        signature.put("vocabulary", vocabularyName);
+        signature.put("vocabularyId", vocabularyId);
+        signature.put("identifier", identifierVocabField + " " + identifierVocabFieldId);
+        signature.put("mapping", mapping);
+        return FingerprintStore.hash(signature);
+    }
+
+    /*
+     * Write the statistics of the current run into the heris folder
+     */
+    private void writeReport(List<ExportFile> files) {
+        try {
+            statistics.writeReport(getStateFile(REPORT_FILE), files);
         } catch (IOException e) {
             log.error(e);
         }
@@ -149,16 +667,23 @@ public class HerisQuartzPlugin extends AbstractGoobiJob {
     }
 
     /**
-     * Parse the configuration file
+     * Parse the configuration file and resolve the configured vocabulary
      * 
      */
 
     public void parseConfiguration() {
-        jsonMapping = new HashMap<>();
+        readConfiguration();
+        resolveConfiguredVocabulary();
+    }
 
-        XMLConfiguration config = ConfigPlugins.getPluginConfig(getJobName());
-        config.setExpressionEngine(new XPathExpressionEngine());
-        config.setReloadingStrategy(new FileChangedReloadingStrategy());
+    /*
+     * Parse the configuration file only, without calling the vocabulary api
+     */
+    private void readConfiguration() {
+        jsonMapping = new LinkedHashMap<>();
+        fieldOptions = new LinkedHashMap<>();
+
+        XMLConfiguration config = ConfigurationCache.getConfiguration(getJobName());
         herisFolder = config.getString("/herisFolder");
 
         useSFTP = config.getBoolean("/sftp/@use", true);
@@ -170,25 +695,76 @@ public class HerisQuartzPlugin extends AbstractGoobiJob {
         knownHosts = config.getString("/sftp/knownHosts", System.getProperty("user.home").concat("/.ssh/known_hosts"));
         ftpFolder = config.getString("/sftp/sftpFolder");
         pubkeyAcceptedAlgorithms = config.getString("/sftp/pubkeyAcceptedAlgorithms");
+        sftpConnectTimeout = config.getInt("/sftp/connectTimeout", 30);
+        sftpIoTimeout = config.getInt("/sftp/ioTimeout", 60);
+        sftpRetries = config.getInt("/sftp/retries", 3);
+        sftpRetryDelay = config.getInt("/sftp/retryDelay", 2);
+        importAllFiles = "all".equalsIgnoreCase(config.getString("/files/@mode", "latest"));
+        parallelFiles = config.getBoolean("/files/@parallel", false);
+        deltaFiles = config.getBoolean("/files/@delta", false);
+        checkpointInterval = config.getInt("/checkpoint/@interval", 0);
+        errorThreshold = config.getInt("/errors/@threshold", 0);
+        dryRun = config.getBoolean("/dryRun/@use", false);
+        saveThreads = config.getInt("/save/@threads", 1);
+        saveQueueSize = config.getInt("/save/@queueSize", 500);
+        saveBatchSize = config.getInt("/save/@batchSize", 1);
+        streamDownload = config.getBoolean("/pipeline/@streamDownload", false);
+        mappingThreads = config.getInt("/pipeline/@mappingThreads", 1);
+        mappingQueueSize = config.getInt("/pipeline/@mappingQueueSize", 100);
+        shard = Shard.parse(config.getString("/cluster/@shard", ""));
         vocabularyName = config.getString("/vocabulary/@name");
+        prefetch = config.getBoolean("/vocabulary/@prefetch", false);
+        prefetchPageSize = config.getInt("/vocabulary/@prefetchPageSize", 1000);
+        vocabularyCacheTime = config.getInt("/vocabulary/@cacheTime", 3600);
+        useFingerprints = config.getBoolean("/fingerprints/@use", false);
+        deleteMissingRecords = "delete".equalsIgnoreCase(config.getString("/fingerprints/@deleted", "report"));
+        maxDeletedRecords = config.getInt("/fingerprints/@maxDeleted", 1000);
+        reconcile = config.getBoolean("/reconcile/@use", false);
+        deleteOrphans = "delete".equalsIgnoreCase(config.getString("/reconcile/@orphans", "report"));
+        maxOrphans = config.getInt("/reconcile/@maxOrphans", 1000);
+        reconcileLogInterval = config.getInt("/reconcile/@logInterval", 100);
 
         List<HierarchicalConfiguration> fields = config.configurationsAt("/vocabulary/field");
         for (HierarchicalConfiguration hc : fields) {
             jsonMapping.put(hc.getString("@fieldName"), hc.getString("@jsonPath"));
+            FieldOptions options = new FieldOptions(FieldOptions.parseType(hc.getString("@fieldName"), hc.getString("@type", "string")),
+                    hc.getBoolean("@multiValue", false), Arrays.asList(StringUtils.split(hc.getString("@language", ""), ", ")));
+            if (!options.isDefault()) {
+                fieldOptions.put(hc.getString("@fieldName"), options);
+            }
             if (hc.getBoolean("@identifier", false)) {
                 identifierVocabField = hc.getString("@fieldName");
                 identifierJsonField = hc.getString("@jsonPath");
             }
         }
+    }
 
-        vocabulary = VocabularyAPIManager.getInstance().vocabularies().findByName(vocabularyName);
+    /*
+     * Get vocabulary, schema and field mapping, from the cache if possible
+     */
+    private void resolveConfiguredVocabulary() {
+        ConfigurationCache.ResolvedVocabulary resolved =
+                ConfigurationCache.getVocabulary(vocabularyName, vocabularyCacheTime * 1000L, this::resolveVocabulary);
+        vocabulary = resolved.getVocabulary();
         vocabularyId = vocabulary.getId();
-        vocabularySchema = VocabularyAPIManager.getInstance().vocabularySchemas().get(vocabulary.getSchemaId());
-        identifierVocabFieldId = vocabularySchema.getDefinitions().stream()
+        identifierVocabFieldId = resolved.getIdentifierFieldId();
+        identifierPath = JsonPath.compile(identifierJsonField);
+        recordMapper = resolved.getRecordMapper();
+    }
+
+    /*
+     * Request vocabulary and schema from the api and resolve the configured fields
+     */
+    private ConfigurationCache.ResolvedVocabulary resolveVocabulary() {
+        Vocabulary resolvedVocabulary = VocabularyAPIManager.getInstance().vocabularies().findByName(vocabularyName);
+        VocabularySchema schema = VocabularyAPIManager.getInstance().vocabularySchemas().get(resolvedVocabulary.getSchemaId());
+        long identifierFieldId = schema.getDefinitions().stream()
                 .filter(d -> d.getName().equals(identifierVocabField))
                 .findFirst()
                 .orElseThrow(() -> new RuntimeException("Field \"" + identifierVocabField + "\" does not exist in vocabulary \"" + vocabularyName + "\""))
                 .getId();
+        return new ConfigurationCache.ResolvedVocabulary(resolvedVocabulary, schema, identifierFieldId,
+                RecordMapper.create(jsonMapping, fieldOptions, schema));
     }
 
     /**
@@ -198,130 +774,539 @@ public class HerisQuartzPlugin extends AbstractGoobiJob {
      */
 
     public Path getLatestHerisFile() {
-        if (useSFTP) {
-            try {
-                // open sftp connection
-                JSch jsch = new JSch();
-                if (StringUtils.isNotBlank(keyfile) && StringUtils.isNotBlank(password)) {
-                    jsch.addIdentity(keyfile, password);
-                } else if (StringUtils.isNotBlank(keyfile)) {
-                    jsch.addIdentity(keyfile);
-                }
-                //            jschSession.setPort(443);// NOSONAR use this, if other port than 22 is needed
-                jsch.setKnownHosts(knownHosts);
-                Session jschSession = jsch.getSession(username, hostname, port);
-                if (StringUtils.isBlank(keyfile)) {
-                    jschSession.setPassword(password);
-                }
-                if (StringUtils.isNotBlank(pubkeyAcceptedAlgorithms)) {
-                    Properties config = new Properties();
-                    config.put("PubkeyAcceptedAlgorithms", pubkeyAcceptedAlgorithms);
-                    jschSession.setConfig(config);
-                }
-                jschSession.connect();
-                ChannelSftp sftpChannel = (ChannelSftp) jschSession.openChannel("sftp");
-                sftpChannel.connect();
-                // list files in configured directory
-                List<LsEntry> lsList = sftpChannel.ls(ftpFolder);
-                int timestamp = 0;
-                String filename = null;
-                for (LsEntry lsEntry : lsList) {
-
-                    if (lsEntry.getFilename().endsWith(".json") && (timestamp == 0 || timestamp < lsEntry.getAttrs().getMTime())) {
-                        timestamp = lsEntry.getAttrs().getMTime();
-                        filename = lsEntry.getFilename();
-                    }
+        List<ExportFile> files = getPendingFiles(false);
+        if (files.isEmpty()) {
+            return null;
+        }
+        exportFile = files.get(0);
+        return exportFile.getLocalFile();
+    }
+
+    /**
+     * Find the export files that were not imported yet. If sftp is used, the files get downloaded.
+     * 
+     * @param allFiles true to get all files that were not imported yet, false to get only the newest file
+     * @return files ordered by modification time, with their local path
+     */
+
+    public List<ExportFile> getPendingFiles(boolean allFiles) {
+        try (SftpConnection connection = useSFTP ? openSftpConnection() : null) {
+            return downloadFiles(connection, findPendingFiles(connection, allFiles));
+        } catch (IOException e) {
+            log.error(e);
+            return new ArrayList<>();
+        }
+    }
+
+    /*
+     * List the remote or local folder and compare the files with the ledger, nothing is downloaded yet
+     */
+    private List<ExportFile> findPendingFiles(SftpConnection connection, boolean allFiles) throws IOException {
+        importLedger = ImportLedger.load(getStateFile(LEDGER_FILE));
+        List<ExportFile> available = new ArrayList<>();
+        if (connection != null) {
+            // list files in configured directory
+            List<LsEntry> lsList = connection.execute(channel -> channel.ls(ftpFolder));
+            for (LsEntry lsEntry : lsList) {
+                if (isExportFile(lsEntry.getFilename())) {
+                    available.add(new ExportFile(lsEntry.getFilename(), lsEntry.getAttrs().getSize(), lsEntry.getAttrs().getMTime() * 1000L));
                 }
-                Path destination = Paths.get(herisFolder, filename);
-                sftpChannel.get(ftpFolder + filename, destination.toString());
-                // close connection
-                sftpChannel.disconnect();
-                jschSession.disconnect();
-                return destination;
-            } catch (JSchException | SftpException e) {
-                log.error(e);
             }
         } else {
             try (Stream<Path> walk = Files.walk(Path.of(herisFolder))) {
-                return walk.filter(p -> !Files.isDirectory(p))
-                        .filter(p -> p.toString().toLowerCase().endsWith(".json"))
-                        .max(Comparator.comparing(p -> p.toFile().lastModified(), Long::compare))
-                        .orElse(null);
+                List<Path> jsonFiles = walk.filter(p -> !Files.isDirectory(p))
+                        .filter(p -> isExportFile(p.getFileName().toString()))
+                        .collect(Collectors.toList());
+                for (Path path : jsonFiles) {
+                    ExportFile file = new ExportFile(path.getFileName().toString(), Files.size(path), path.toFile().lastModified());
+                    file.setLocalFile(path);
+                    available.add(file);
+                }
+            }
+        }
+        return selectPendingFiles(available, allFiles);
+    }
+
+    /*
+     * Download the files from the sftp server, if a download fails, the remaining files are skipped. Local files are returned unchanged.
+     */
+    private List<ExportFile> downloadFiles(SftpConnection connection, List<ExportFile> files) {
+        if (connection == null) {
+            return files;
+        }
+        List<ExportFile> result = new ArrayList<>();
+        for (ExportFile file : files) {
+            try {
+                file.setLocalFile(connection.execute(channel -> downloadFile(channel, file)));
             } catch (IOException e) {
-                log.error(e);
+                log.error("Download of {} failed", file, e);
+                break;
             }
+            result.add(file);
         }
-        return null;
+        return result;
+    }
+
+    /*
+     * Create the connection to the configured sftp server, it is opened on first use
+     */
+    private SftpConnection openSftpConnection() {
+        SftpConnection connection = new SftpConnection(username, password, keyfile, hostname, port, knownHosts, pubkeyAcceptedAlgorithms);
+        connection.setConnectTimeout(sftpConnectTimeout * 1000);
+        connection.setIoTimeout(sftpIoTimeout * 1000);
+        connection.setRetries(sftpRetries);
+        connection.setRetryDelay(sftpRetryDelay * 1000L);
+        return connection;
+    }
+
+    /*
+     * Check if the file name belongs to an export file
+     */
+    private static boolean isExportFile(String filename) {
+        return HerisJsonReader.isSupportedFile(filename) && !filename.startsWith(REPORT_FILE_PREFIX);
+    }
+
+    /*
+     * Sort the files by modification time and remove the files that were already imported
+     */
+    private List<ExportFile> selectPendingFiles(List<ExportFile> available, boolean allFiles) {
+        available.sort(Comparator.comparingLong(ExportFile::getModified).thenComparing(ExportFile::getName));
+        List<ExportFile> pending = new ArrayList<>();
+        if (allFiles) {
+            for (ExportFile file : available) {
+                if (!importLedger.contains(file)) {
+                    pending.add(file);
+                }
+            }
+        } else if (!available.isEmpty()) {
+            ExportFile latest = available.get(available.size() - 1);
+            if (importLedger.contains(latest)) {
+                log.info("{} was already imported, skipping it", latest);
+            } else {
+                pending.add(latest);
+            }
+        }
+        return pending;
+    }
+
+    /*
+     * Download the file into the heris folder. The data is written into a temporary file first, an incomplete temporary file from a previous run
+     * is resumed. Once the download is complete, the file is renamed.
+     */
+    private Path downloadFile(ChannelSftp sftpChannel, ExportFile file) throws SftpException, IOException {
+        Path destination = Paths.get(herisFolder, file.getName());
+        if (Files.exists(destination) && Files.size(destination) == file.getSize()) {
+            log.info("{} was already downloaded", file);
+            return destination;
+        }
+        long start = System.nanoTime();
+        Path partFile = getStateFile(file.getName() + PART_FILE_SUFFIX);
+        long existingBytes = getResumableBytes(file, partFile);
+        sftpChannel.get(ftpFolder + file.getName(), partFile.toString(), null, existingBytes > 0 ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE);
+        statistics.addBytesDownloaded(Files.size(partFile) - existingBytes);
+        statistics.addStageTime(ImportStatistics.Stage.DOWNLOAD, start);
+        completeDownload(file, partFile, destination);
+        return destination;
+    }
+
+    /*
+     * Get the number of bytes of an incomplete part file from a previous run. A part file that is not smaller than the export file is removed.
+     */
+    private long getResumableBytes(ExportFile file, Path partFile) throws IOException {
+        if (!Files.exists(partFile)) {
+            return 0;
+        }
+        long existingBytes = Files.size(partFile);
+        if (existingBytes < file.getSize()) {
+            log.info("Resuming download of {} at {} bytes", file, existingBytes);
+            return existingBytes;
+        }
+        Files.delete(partFile);
+        return 0;
+    }
+
+    /*
+     * Check the size of the downloaded part file and rename it
+     */
+    private void completeDownload(ExportFile file, Path partFile, Path destination) throws IOException {
+        if (Files.size(partFile) != file.getSize()) {
+            throw new IOException("Download of " + file + " is incomplete, got " + Files.size(partFile) + " bytes");
+        }
+        Files.move(partFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     /**
      * Convert json file into VocabRecord
      */
     public List<VocabularyRecord> generateRecordsFromFile() {
-        List<VocabularyRecord> result = new LinkedList<>();
+        List<VocabularyRecord> result = new ArrayList<>();
+        try {
+            processFile(r -> {
+                if (r != null) {
+                    result.add(r);
+                }
+            });
+        } catch (IOException e) {
+            log.error(e);
+        }
+        return result;
+    }
+
+    /**
+     * Read the json file object by object, convert each object into a vocabulary record and pass it to the consumer
+     * 
+     * @param consumer receives the converted records, or null for existing records without changes
+     * @return number of processed objects
+     * @throws IOException if the file cannot be read
+     */
+    public long processFile(Consumer<VocabularyRecord> consumer) throws IOException {
+        return processFile(jsonFile, consumer);
+    }
 
-        // open json file
-        try (InputStream is = new FileInputStream(jsonFile.toFile())) {
-            Object document = Configuration.defaultConfiguration().jsonProvider().parse(is, StandardCharsets.UTF_8.toString());
-            // split array into single objects
-            Object object = JsonPath.read(document, "$.*");
-            if (object instanceof List) {
-                List<?> records = (List<?>) object;
+    /**
+     * Read the given json file object by object, convert each object into a vocabulary record and pass it to the consumer
+     * 
+     * @param file file to read
+     * @param consumer receives the converted records, or null for existing records without changes
+     * @return number of processed objects
+     * @throws IOException if the file cannot be read
+     */
+    public long processFile(Path file, Consumer<VocabularyRecord> consumer) throws IOException {
+        return processFile(file, null, consumer);
+    }
+
+    /**
+     * Read the given json file object by object, convert each object into a vocabulary record and pass it to the consumer. If a progress is given,
+     * the objects completed in an earlier run are skipped and the progress is updated for the unchanged objects. Records passed to the consumer are
+     * completed once they are saved.
+     * 
+     * @param file file to read
+     * @param progress progress of the file or null
+     * @param consumer receives the converted records, or null for existing records without changes
+     * @return number of processed objects
+     * @throws IOException if the file cannot be read
+     */
+    public long processFile(Path file, ImportCheckpoint.Progress progress, Consumer<VocabularyRecord> consumer) throws IOException {
+        try (InputStream is = HerisJsonReader.open(file)) {
+            return processStream(file.getFileName().toString(), is, progress, consumer);
+        }
+    }
 
-                // parse metadata
-                records.forEach(r -> result.add(parseRecord(r)));
+    /*
+     * Read the export file while it is downloaded. The received bytes are stored in the part file, so an interrupted transfer is resumed in the
+     * next run. Once the file is read completely, the part file is renamed like a regular download. Only the time spent waiting for the remote
+     * file is counted as download, parsing and mapping are counted by their own stages.
+     */
+    long processDownload(ExportFile file, ImportCheckpoint.Progress progress, Consumer<VocabularyRecord> consumer) throws IOException {
+        Path destination = Paths.get(herisFolder, file.getName());
+        Path partFile = getStateFile(file.getName() + PART_FILE_SUFFIX);
+        long existingBytes = getResumableBytes(file, partFile);
+        long start = System.nanoTime();
+        InputStream remote = sftpConnection.execute(channel -> channel.get(ftpFolder + file.getName(), null, existingBytes));
+        statistics.addStageTime(ImportStatistics.Stage.DOWNLOAD, start);
+        long count;
+        try (StreamingDownload download = new StreamingDownload(remote, partFile)) {
+            try {
+                // the bytes of the previous transfer are read from the part file first
+                InputStream raw = existingBytes > 0 ? new SequenceInputStream(Files.newInputStream(partFile), download) : download;
+                try (InputStream is = HerisJsonReader.decompress(new BufferedInputStream(raw), file.getName())) {
+                    count = processStream(file.getName(), is, progress, consumer);
+                    // bytes behind the json document, e.g. the gzip trailer or the zip directory, must be stored before the stream is closed
+                    download.finish();
+                }
+            } finally {
+                statistics.addBytesDownloaded(download.getBytes());
+                statistics.addStageNanos(ImportStatistics.Stage.DOWNLOAD, download.getNanos());
             }
-        } catch (IOException e) {
-            log.error(e);
         }
+        completeDownload(file, partFile, destination);
+        file.setLocalFile(destination);
+        return count;
+    }
 
-        return result;
+    /*
+     * Read the objects of a json stream. Identifier, fingerprint and mapping are handled by the mapping stage, either in the reading thread or, if
+     * configured, in several mapping threads. Objects with the same identifier are always mapped by the same thread. Objects of other shards are
+     * skipped.
+     */
+    private long processStream(String fileName, InputStream is, ImportCheckpoint.Progress progress, Consumer<VocabularyRecord> consumer)
+            throws IOException {
+        long start = System.nanoTime();
+        long skip = progress != null ? progress.getCompleted() : 0;
+        if (skip > 0) {
+            log.info("Resuming import of {} after {} records", fileName, skip);
+        }
+        AtomicLong position = new AtomicLong(skip);
+        try (MappingStage mappingStage = mappingThreads > 1 ? new MappingStage(mappingThreads, mappingQueueSize, "heris-mapping-") : null) {
+            long count = HerisJsonReader.read(is, skip, json -> {
+                long index = position.getAndIncrement();
+                String identifierValue = mappingStage != null || shard != null ? readIdentifier(json) : null;
+                if (shard != null && !shard.contains(identifierValue)) {
+                    // imported by another node
+                    if (progress != null) {
+                        progress.complete(index);
+                    }
+                } else if (mappingStage == null) {
+                    processObject(fileName, index, json, progress, consumer);
+                } else {
+                    mappingStage.submit(Objects.hashCode(identifierValue), () -> processObject(fileName, index, json, progress, consumer));
+                }
+            });
+            if (mappingStage != null) {
+                // wait for the mapping of the last objects
+                mappingStage.close();
+            }
+            return count;
+        } finally {
+            statistics.addStageTime(ImportStatistics.Stage.READ, start);
+        }
     }
 
     /*
-     * Convert a single json object, update the vocabulary record
+     * Read the raw identifier to select shard and mapping thread and to collect the identifiers of the export, errors are reported by the mapping
+     * of the object
      */
-    private VocabularyRecord parseRecord(Object jsonRecord) {
-        // get identifier field
-        String identifierValue = (String) JsonPath.read(jsonRecord, identifierJsonField);
+    private String readIdentifier(Object json) {
+        try {
+            Object value = identifierPath.read(json);
+            return value == null ? null : String.valueOf(value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
 
-        VocabularyRecord vocabRecord = findOrCreateNewRecord(identifierValue);
+    /*
+     * Convert a single object and pass the record to the consumer
+     */
+    private void processObject(String fileName, long index, Object json, ImportCheckpoint.Progress progress, Consumer<VocabularyRecord> consumer) {
+        if (isErrorThresholdExceeded()) {
+            // records failed in the save stage
+            throw new IllegalStateException("Import cancelled, " + statistics.getFailedRecords() + " records failed");
+        }
+        statistics.recordProcessed();
+        if (exportIdentifiers != null) {
+            // collected before the mapping, a record must not become an orphan because its object could not be imported
+            String rawIdentifier = readIdentifier(json);
+            if (rawIdentifier != null) {
+                exportIdentifiers.add(rawIdentifier);
+            }
+        }
+        String identifierValue = null;
+        VocabularyRecord vocabRecord;
+        try {
+            identifierValue = identifierPath.read(json);
+            long fingerprint = 0;
+            if (fingerprints != null && identifierValue != null) {
+                fingerprint = FingerprintStore.hash(json);
+                if (fingerprints.matches(identifierValue, fingerprint)) {
+                    statistics.recordSkipped();
+                    if (progress != null) {
+                        progress.complete(index);
+                    }
+                    return;
+                }
+            }
+            vocabRecord = parseRecord(json, identifierValue);
+            if (fingerprints != null && identifierValue != null) {
+                if (vocabRecord == null) {
+                    fingerprints.put(identifierValue, fingerprint);
+                } else {
+                    fingerprints.stage(identifierValue, fingerprint);
+                }
+            }
+        } catch (RuntimeException e) {
+            // a single broken object does not stop the import
+            recordFailed(fileName, index, identifierValue, "mapping", e, json);
+            if (progress != null) {
+                progress.complete(index);
+            }
+            if (isErrorThresholdExceeded()) {
+                throw new IllegalStateException("Import cancelled, " + statistics.getFailedRecords() + " records failed", e);
+            }
+            return;
+        }
+        if (progress != null) {
+            if (vocabRecord == null) {
+                progress.complete(index);
+            } else {
+                checkpoint.submitted(vocabRecord, progress, index);
+            }
+        }
+        consumer.accept(vocabRecord);
+    }
 
-        // add or overwrite values
+    /*
+     * Count the failed record and write it into the dead letter file
+     */
+    private void recordFailed(String fileName, long index, String identifierValue, String stage, Exception e, Object json) {
+        log.error("Record {} could not be imported: {}", identifierValue, e.getMessage());
+        statistics.recordsFailed(1);
+        if (deadLetters != null) {
+            deadLetters.write(fileName, index, identifierValue, stage, e, json);
+        }
+        if (diffReport != null) {
+            diffReport.recordFailed(identifierValue, stage, e);
+        }
+    }
 
-        for (Map.Entry<String, String> entry : jsonMapping.entrySet()) {
-            String fieldName = entry.getKey();
-            String jsonPath = entry.getValue();
+    private boolean isErrorThresholdExceeded() {
+        return errorThreshold > 0 && statistics.getFailedRecords() > errorThreshold;
+    }
 
-            Optional<Long> definitionId = vocabularySchema.getDefinitions().stream()
-                    .filter(d -> d.getName().equals(fieldName))
-                    .findFirst()
-                    .map(FieldDefinition::getId);
+    /*
+     * Compare all records of the vocabulary with the identifiers of the export. Orphaned records are reported and, if configured and not a dry
+     * run, deleted. Nothing is deleted if there are more orphans than expected, e.g. because of an incomplete export, or if records of this run
+     * failed, as the identifier of a broken object may be missing. A dry run does not write the orphan file, the orphans are only listed in the
+     * report.
+     */
+    private void reconcileVocabulary(Consumer<String> orphanListener) {
+        long start = System.nanoTime();
+        VocabularyReconciler reconciler = new VocabularyReconciler(VocabularyAPIManager.getInstance().vocabularyRecords(), vocabularyId,
+                identifierVocabFieldId, prefetchPageSize);
+        Path orphanFile = getStateFile(ORPHANED_RECORDS_FILE);
+        long[] orphans;
+        try (BufferedWriter writer = dryRun ? null : Files.newBufferedWriter(orphanFile, StandardCharsets.UTF_8)) {
+            orphans = reconciler.findOrphans(exportIdentifiers, shard == null ? identifier -> true : shard::contains, identifier -> {
+                statistics.recordOrphaned();
+                orphanListener.accept(identifier);
+                if (writer == null) {
+                    return;
+                }
+                try {
+                    writer.write(identifier);
+                    writer.newLine();
+                } catch (IOException e) {
+                    log.error("Cannot write to {}", orphanFile, e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            log.error("Reconciliation of vocabulary {} failed", vocabularyName, e);
+            return;
+        } finally {
+            statistics.addStageTime(ImportStatistics.Stage.RECONCILE, start);
+        }
+        if (dryRun) {
+            log.info("{} records are not part of the export", orphans.length);
+            return;
+        }
+        if (orphans.length == 0) {
+            try {
+                Files.deleteIfExists(orphanFile);
+            } catch (IOException e) {
+                log.error(e);
+            }
+            return;
+        }
+        log.info("{} records are not part of the export, see {}", orphans.length, orphanFile.getFileName());
+        if (!deleteOrphans) {
+            return;
+        }
+        if (statistics.getFailedRecords() > 0) {
+            log.error("{} records failed in this run, the orphaned records are not deleted", statistics.getFailedRecords());
+            return;
+        }
+        if (maxOrphans >= 0 && orphans.length > maxOrphans) {
+            log.error("Found {} orphaned records, more than the configured maximum of {}. Check the export, the records are not deleted",
+                    orphans.length, maxOrphans);
+            return;
+        }
+        long deleteStart = System.nanoTime();
+        reconciler.deleteRecords(orphans, reconcileLogInterval, statistics);
+        statistics.addStageTime(ImportStatistics.Stage.RECONCILE, deleteStart);
+    }
 
-            if (definitionId.isEmpty()) {
-                continue;
+    /*
+     * Report identifiers that were imported before but are missing in the current export, delete their records if configured
+     */
+    private void handleDeletedRecords(List<String> identifiers) {
+        if (identifiers.isEmpty()) {
+            return;
+        }
+        log.info("{} records are no longer part of the export, see {}", identifiers.size(), getStateFile(DELETED_RECORDS_FILE).getFileName());
+        try {
+            Files.write(getStateFile(DELETED_RECORDS_FILE), identifiers, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error(e);
+        }
+        if (!deleteMissingRecords) {
+            // the fingerprints are kept, so the records are reported again until they are deleted
+            return;
+        }
+        if (maxDeletedRecords >= 0 && identifiers.size() > maxDeletedRecords) {
+            log.error("{} records are missing in the export, more than the configured maximum of {}. Check the export, the records are not deleted",
+                    identifiers.size(), maxDeletedRecords);
+            return;
+        }
+        VocabularyRecordAPI recordAPI = VocabularyAPIManager.getInstance().vocabularyRecords();
+        List<String> removed = new ArrayList<>();
+        for (String identifier : identifiers) {
+            try {
+                ExtendedVocabularyRecord vocabRecord = recordIndex != null ? recordIndex.find(identifier) : findRecord(identifier);
+                if (vocabRecord != null && vocabRecord.getId() != null) {
+                    long start = System.nanoTime();
+                    recordAPI.delete(vocabRecord);
+                    statistics.addApiCall("delete", start);
+                    statistics.recordDeleted();
+                }
+                // the record was deleted or does not exist anymore
+                removed.add(identifier);
+            } catch (RuntimeException e) {
+                log.error("Record {} could not be deleted: {}", identifier, e.getMessage());
             }
+        }
+        fingerprints.removeAll(removed);
+    }
+
+    /*
+     * Check if the files of this run contain the complete export, otherwise records missing in the files must not be treated as deleted
+     */
+    private boolean isCompleteExport(List<ExportFile> files) {
+        if (deltaFiles) {
+            log.info("The files contain only changes, skipping the detection of deleted records");
+            return false;
+        }
+        if (importAllFiles && files.size() > 1 && !parallelFiles) {
+            log.info("{} files were imported one after another, skipping the detection of deleted records", files.size());
+            return false;
+        }
+        return true;
+    }
 
-            // remove existing field
-            vocabRecord.getFields().removeIf(f -> f.getDefinitionId().equals(definitionId.get()));
+    /*
+     * Convert a single json object, update the vocabulary record
+     * 
+     * returns null, if the record exists and the mapped values did not change
+     */
+    private VocabularyRecord parseRecord(Object jsonRecord, String identifierValue) {
+        long start = System.nanoTime();
+        VocabularyRecord vocabRecord = findOrCreateNewRecord(identifierValue);
+        boolean newRecord = vocabRecord.getId() == null;
+        statistics.addStageTime(ImportStatistics.Stage.LOOKUP, start);
 
-            Object val = JsonPath.read(jsonRecord, jsonPath);
-            if (val == null) {
-                continue;
-            }
+        Map<String, List<String>> oldValues = diffReport != null && !newRecord ? recordMapper.describe(vocabRecord) : null;
 
-            FieldInstance field = new FieldInstance();
-            field.setDefinitionId(definitionId.get());
-            field.setRecordId(vocabRecord.getId()); // This is either null for new records or existing id for existing records (API expects this like this)
-            TranslationInstance translationInstance = new TranslationInstance();
-            translationInstance.setValue((String) val);
-            FieldValue fieldValue = new FieldValue();
-            fieldValue.setTranslations(List.of(translationInstance));
-            field.setValues(List.of(fieldValue));
+        // add or overwrite values
+        start = System.nanoTime();
+        boolean changed = recordMapper.apply(jsonRecord, vocabRecord);
+        statistics.addStageTime(ImportStatistics.Stage.MAPPING, start);
+        if (!changed) {
+            statistics.recordUnchanged();
+            return null;
+        }
 
-            vocabRecord.getFields().add(field);
+        if (diffReport != null) {
+            if (newRecord) {
+                diffReport.recordCreated(identifierValue, recordMapper.describe(vocabRecord));
+            } else {
+                diffReport.recordChanged(identifierValue, oldValues, recordMapper.describe(vocabRecord));
+            }
         }
 
+        if (newRecord) {
+            statistics.recordCreated();
+        } else {
+            statistics.recordChanged();
+        }
         return vocabRecord;
     }
 
@@ -330,14 +1315,46 @@ public class HerisQuartzPlugin extends AbstractGoobiJob {
      * 
      */
     private ExtendedVocabularyRecord findOrCreateNewRecord(String identifierValue) {
+        if (recordIndex != null) {
+            ExtendedVocabularyRecord existing = recordIndex.find(identifierValue);
+            if (existing != null) {
+                return existing;
+            }
+            ExtendedVocabularyRecord newRecord = createEmptyRecord();
+            // further occurrences of this identifier in the same file update the new record
+            existing = recordIndex.putIfAbsent(identifierValue, newRecord);
+            return existing != null ? existing : newRecord;
+        }
+
+        ExtendedVocabularyRecord existing = findRecord(identifierValue);
+        if (existing == null) {
+            return createEmptyRecord();
+        }
+        return existing;
+    }
+
+    private ExtendedVocabularyRecord createEmptyRecord() {
+        if (recordFactory != null) {
+            return recordFactory.get();
+        }
+        return VocabularyAPIManager.getInstance().vocabularyRecords().createEmptyRecord(vocabularyId, null, false);
+    }
+
+    /*
+     * Search the record with the given identifier
+     * 
+     */
+    private ExtendedVocabularyRecord findRecord(String identifierValue) {
+        long start = System.nanoTime();
         List<ExtendedVocabularyRecord> results = VocabularyAPIManager.getInstance().vocabularyRecords()
                 .list(vocabularyId)
                 .search(identifierVocabFieldId + ":" + identifierValue)
                 .request()
                 .getContent();
+        statistics.addApiCall("search", start);
 
         if (results.isEmpty()) {
-            return VocabularyAPIManager.getInstance().vocabularyRecords().createEmptyRecord(vocabularyId, null, false);
+            return null;
         } else if (results.size() == 1) {
             return results.get(0);
         } else {
@@ -0,0 +1,123 @@
+package io.goobi.api.job;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compact set of the identifiers found in an export.
+ *
+ * Numeric identifiers are stored as primitive values in an open addressing hash table, so each of them needs only a few bytes instead of a string
+ * object and a map entry. Other identifiers are kept in a regular set.
+ */
+public class IdentifierSet {
+
+    // marks an unused slot, negative numbers are never stored as number
+    private static final long EMPTY = -1;
+
+    private long[] numbers = newTable(1024);
+
+    private int numberCount;
+
+    private final Set<String> others = new HashSet<>();
+
+    /**
+     * Add an identifier
+     *
+     * @param identifier identifier to add
+     * @return true if the identifier was not part of the set yet
+     */
+
+    public synchronized boolean add(String identifier) {
+        long number = toNumber(identifier);
+        if (number == EMPTY) {
+            return others.add(identifier);
+        }
+        if ((numberCount + 1) * 3 > numbers.length * 2) {
+            resize();
+        }
+        if (insert(numbers, number)) {
+            numberCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if an identifier is part of the set
+     *
+     * @param identifier identifier to check
+     * @return true if the identifier was added before
+     */
+
+    public synchronized boolean contains(String identifier) {
+        long number = toNumber(identifier);
+        if (number == EMPTY) {
+            return others.contains(identifier);
+        }
+        int mask = numbers.length - 1;
+        for (int slot = slot(number, mask);; slot = (slot + 1) & mask) {
+            if (numbers[slot] == EMPTY) {
+                return false;
+            } else if (numbers[slot] == number) {
+                return true;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return numberCount + others.size();
+    }
+
+    /*
+     * Get the numeric value, if the identifier is the canonical form of a non negative number, so the string can be restored exactly
+     */
+    private static long toNumber(String identifier) {
+        int length = identifier.length();
+        if (length == 0 || length > 18 || length > 1 && identifier.charAt(0) == '0') {
+            return EMPTY;
+        }
+        long number = 0;
+        for (int i = 0; i < length; i++) {
+            char c = identifier.charAt(i);
+            if (c < '0' || c > '9') {
+                return EMPTY;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    private static long[] newTable(int size) {
+        long[] table = new long[size];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int slot(long number, int mask) {
+        long hash = number * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private static boolean insert(long[] table, long number) {
+        int mask = table.length - 1;
+        for (int slot = slot(number, mask);; slot = (slot + 1) & mask) {
+            if (table[slot] == EMPTY) {
+                table[slot] = number;
+                return true;
+            } else if (table[slot] == number) {
+                return false;
+            }
+        }
+    }
+
+    private void resize() {
+        long[] table = newTable(numbers.length * 2);
+        for (long number : numbers) {
+            if (number != EMPTY) {
+                insert(table, number);
+            }
+        }
+        numbers = table;
+    }
+}
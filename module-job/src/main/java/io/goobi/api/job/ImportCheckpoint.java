@@ -0,0 +1,235 @@
+package io.goobi.api.job;
+
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Progress of the files that are currently imported. Each line contains name, size and modification time of a file and the number of objects at
+ * the beginning of the file that are completely processed, separated by tabs.
+ *
+ * An object is completed when it was skipped, is unchanged or when its record was passed to the api. Records are saved in parallel and can
+ * complete in any order, only the number of objects without a gap is stored. After a restart the import of the same file continues behind these
+ * objects.
+ */
+@Log4j2
+public class ImportCheckpoint {
+
+    private final Path file;
+
+    // number of completed objects after which the file gets written
+    private final int interval;
+
+    private final Map<ExportFile, Progress> files = new LinkedHashMap<>();
+
+    // records passed to the save stage and the objects they belong to, the same record can be submitted for several objects
+    private final Map<VocabularyRecord, Deque<Position>> submitted = new IdentityHashMap<>();
+
+    private long completedSinceSave;
+
+    private ImportCheckpoint(Path file, int interval) {
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * Read the checkpoint from the given file, a missing file results in an empty checkpoint
+     *
+     * @param file checkpoint file
+     * @param interval number of completed objects after which the file gets written
+     * @return the checkpoint
+     */
+
+    public static ImportCheckpoint load(Path file, int interval) {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, interval);
+        if (!Files.exists(file)) {
+            return checkpoint;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length == 4) {
+                    ExportFile exportFile = new ExportFile(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                    checkpoint.files.put(exportFile, new Progress(checkpoint, Long.parseLong(parts[3])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("Cannot read checkpoint file {}, the files get imported from the beginning", file, e);
+            checkpoint.files.clear();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Forget the progress of files that are not part of the current import
+     *
+     * @param pendingFiles files to import
+     */
+
+    public synchronized void retainAll(Collection<ExportFile> pendingFiles) {
+        files.keySet().retainAll(pendingFiles);
+    }
+
+    /**
+     * Get the progress of a file, it contains the completed objects of an earlier, interrupted run
+     *
+     * @param exportFile file to import
+     * @return the progress
+     */
+
+    public synchronized Progress getProgress(ExportFile exportFile) {
+        return files.computeIfAbsent(exportFile, f -> new Progress(this, 0));
+    }
+
+    /**
+     * Remove a completely imported file
+     *
+     * @param exportFile imported file
+     */
+
+    public synchronized void remove(ExportFile exportFile) {
+        files.remove(exportFile);
+    }
+
+    /**
+     * Remember that the record was passed to the save stage for the given object
+     *
+     * @param vocabRecord submitted record
+     * @param progress progress of the file
+     * @param index position of the object in the file
+     */
+
+    public synchronized void submitted(VocabularyRecord vocabRecord, Progress progress, long index) {
+        submitted.computeIfAbsent(vocabRecord, r -> new ArrayDeque<>()).add(new Position(progress, index));
+    }
+
+    /**
+     * Complete the oldest object the record was submitted for. Called after the record was saved or failed.
+     *
+     * @param vocabRecord finished record
+     */
+
+    public void finished(VocabularyRecord vocabRecord) {
+        Position position;
+        synchronized (this) {
+            Deque<Position> positions = submitted.get(vocabRecord);
+            if (positions == null) {
+                return;
+            }
+            position = positions.poll();
+            if (positions.isEmpty()) {
+                submitted.remove(vocabRecord);
+            }
+        }
+        position.progress.complete(position.index);
+    }
+
+    /*
+     * Write the file after each interval of completed objects
+     */
+    private void completed() {
+        synchronized (this) {
+            if (interval <= 0 || ++completedSinceSave < interval) {
+                return;
+            }
+        }
+        try {
+            save();
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+
+    /**
+     * Write the checkpoint into a temporary file and replace the old file afterwards. Without unfinished files the checkpoint file is removed.
+     *
+     * @throws IOException if the file cannot be written
+     */
+
+    public synchronized void save() throws IOException {
+        completedSinceSave = 0;
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<ExportFile, Progress> entry : files.entrySet()) {
+            long completed = entry.getValue().getCompleted();
+            if (completed > 0) {
+                ExportFile exportFile = entry.getKey();
+                lines.add(exportFile.getName() + "\t" + exportFile.getSize() + "\t" + exportFile.getModified() + "\t" + completed);
+            }
+        }
+        if (lines.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Completed objects of a single file
+     */
+    public static class Progress {
+
+        private final ImportCheckpoint checkpoint;
+
+        // number of objects at the beginning of the file without gap
+        private long completed;
+
+        // completed objects behind the first gap
+        private final TreeSet<Long> completedAhead = new TreeSet<>();
+
+        private Progress(ImportCheckpoint checkpoint, long completed) {
+            this.checkpoint = checkpoint;
+            this.completed = completed;
+        }
+
+        /**
+         * Mark the object with the given position as completed
+         *
+         * @param index position of the object in the file
+         */
+
+        public void complete(long index) {
+            synchronized (this) {
+                if (index == completed) {
+                    completed++;
+                    while (!completedAhead.isEmpty() && completedAhead.first() == completed) {
+                        completedAhead.pollFirst();
+                        completed++;
+                    }
+                } else if (index > completed) {
+                    completedAhead.add(index);
+                }
+            }
+            checkpoint.completed();
+        }
+
+        public synchronized long getCompleted() {
+            return completed;
+        }
+    }
+
+    private static class Position {
+        private final Progress progress;
+        private final long index;
+
+        private Position(Progress progress, long index) {
+            this.progress = progress;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.goobi.api.job;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * List of export files that were imported successfully. Each line contains name, size and modification time of a file, separated by tabs.
+ */
+@Log4j2
+public class ImportLedger {
+
+    private final Path file;
+
+    private final Set<ExportFile> importedFiles = new LinkedHashSet<>();
+
+    private ImportLedger(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the ledger from the given file, a missing file results in an empty ledger
+     *
+     * @param file ledger file
+     * @return the ledger
+     */
+
+    public static ImportLedger load(Path file) {
+        ImportLedger ledger = new ImportLedger(file);
+        if (!Files.exists(file)) {
+            return ledger;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length == 3) {
+                    ledger.importedFiles.add(new ExportFile(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("Cannot read list of imported files {}", file, e);
+        }
+        return ledger;
+    }
+
+    public synchronized boolean contains(ExportFile exportFile) {
+        return importedFiles.contains(exportFile);
+    }
+
+    public synchronized void add(ExportFile exportFile) {
+        importedFiles.add(exportFile);
+    }
+
+    /**
+     * Write the ledger into a temporary file and replace the old file afterwards
+     *
+     * @throws IOException if the file cannot be written
+     */
+
+    public synchronized void save() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (ExportFile exportFile : importedFiles) {
+            lines.add(exportFile.getName() + "\t" + exportFile.getSize() + "\t" + exportFile.getModified());
+        }
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
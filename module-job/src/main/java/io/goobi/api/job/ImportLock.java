@@ -0,0 +1,78 @@
+package io.goobi.api.job;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exclusive lock of an import, held on a file in the heris folder.
+ *
+ * The lock is not blocking: if another run in this or in a different JVM holds the lock, acquiring it fails immediately. The operating system
+ * releases the lock if the process ends, a stale lock file does not block further imports.
+ */
+@Log4j2
+public class ImportLock implements AutoCloseable {
+
+    // lock files held in this JVM. A second channel on a locked file must not be opened, closing it would release the lock on some systems.
+    private static final Set<Path> HELD_LOCKS = ConcurrentHashMap.newKeySet();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private ImportLock(Path file, FileChannel channel, FileLock lock) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Try to get the lock on the given file
+     *
+     * @param file lock file, gets created if it does not exist
+     * @return the lock or null, if it is held by another run
+     * @throws IOException if the lock file cannot be opened
+     */
+
+    public static ImportLock tryAcquire(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        if (!HELD_LOCKS.add(key)) {
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(key, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new ImportLock(key, channel, lock);
+            }
+        } catch (IOException | RuntimeException e) {
+            HELD_LOCKS.remove(key);
+            if (channel != null) {
+                channel.close();
+            }
+            throw e;
+        }
+        channel.close();
+        HELD_LOCKS.remove(key);
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            lock.release();
+            channel.close();
+        } catch (IOException e) {
+            log.error(e);
+        } finally {
+            HELD_LOCKS.remove(file);
+        }
+    }
+}
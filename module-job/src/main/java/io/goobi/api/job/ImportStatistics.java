@@ -0,0 +1,293 @@
+package io.goobi.api.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings of a single import run, written as json report at the end of the run
+ */
+public class ImportStatistics {
+
+    /**
+     * Stages of the import. The duration of the read stage is the elapsed time for reading the whole file, the other durations are accumulated
+     * per record and may exceed the elapsed time if several threads are used.
+     */
+    public enum Stage {
+        DOWNLOAD,
+        PREFETCH,
+        READ,
+        LOOKUP,
+        MAPPING,
+        SAVE,
+        RECONCILE
+    }
+
+    private final Instant start = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong processedRecords = new AtomicLong();
+    private final AtomicLong createdRecords = new AtomicLong();
+    private final AtomicLong changedRecords = new AtomicLong();
+    private final AtomicLong unchangedRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong skippedRecords = new AtomicLong();
+    private final AtomicLong deletedRecords = new AtomicLong();
+    private final AtomicLong orphanedRecords = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+
+    // true if the run was cancelled because too many records failed
+    private volatile boolean aborted;
+
+    private final Map<Stage, AtomicLong> stageNanos = new EnumMap<>(Stage.class);
+
+    // latency of the vocabulary api calls by type
+    private final Map<String, LatencyHistogram> apiCalls = new ConcurrentHashMap<>();
+
+    public ImportStatistics() {
+        for (Stage stage : Stage.values()) {
+            stageNanos.put(stage, new AtomicLong());
+        }
+    }
+
+    public void recordProcessed() {
+        processedRecords.incrementAndGet();
+    }
+
+    public void recordCreated() {
+        createdRecords.incrementAndGet();
+    }
+
+    public void recordChanged() {
+        changedRecords.incrementAndGet();
+    }
+
+    public void recordUnchanged() {
+        unchangedRecords.incrementAndGet();
+    }
+
+    public void recordSkipped() {
+        skippedRecords.incrementAndGet();
+    }
+
+    public void recordDeleted() {
+        deletedRecords.incrementAndGet();
+    }
+
+    public void recordOrphaned() {
+        orphanedRecords.incrementAndGet();
+    }
+
+    public void recordsFailed(long count) {
+        failedRecords.addAndGet(count);
+    }
+
+    public void addBytesDownloaded(long bytes) {
+        bytesDownloaded.addAndGet(bytes);
+    }
+
+    /**
+     * Add the duration of a stage
+     *
+     * @param stage import stage
+     * @param startNanos start time from {@link System#nanoTime()}
+     */
+
+    public void addStageTime(Stage stage, long startNanos) {
+        addStageNanos(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add a duration that was measured in several parts
+     *
+     * @param stage import stage
+     * @param nanos duration in nanoseconds
+     */
+
+    public void addStageNanos(Stage stage, long nanos) {
+        stageNanos.get(stage).addAndGet(nanos);
+    }
+
+    /**
+     * Record the duration of a vocabulary api call
+     *
+     * @param type type of the call, e.g. search or save
+     * @param startNanos start time from {@link System#nanoTime()}
+     */
+
+    public void addApiCall(String type, long startNanos) {
+        apiCalls.computeIfAbsent(type, t -> new LatencyHistogram()).record(System.nanoTime() - startNanos);
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public void setAborted(boolean aborted) {
+        this.aborted = aborted;
+    }
+
+    public long getProcessedRecords() {
+        return processedRecords.get();
+    }
+
+    public long getCreatedRecords() {
+        return createdRecords.get();
+    }
+
+    public long getChangedRecords() {
+        return changedRecords.get();
+    }
+
+    public long getUnchangedRecords() {
+        return unchangedRecords.get();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.get();
+    }
+
+    public long getSkippedRecords() {
+        return skippedRecords.get();
+    }
+
+    public long getDeletedRecords() {
+        return deletedRecords.get();
+    }
+
+    public long getOrphanedRecords() {
+        return orphanedRecords.get();
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    public long getStageMillis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos.get(stage).get());
+    }
+
+    public LatencyHistogram getApiCalls(String type) {
+        return apiCalls.get(type);
+    }
+
+    /**
+     * @return processed records per second since the start of the run
+     */
+
+    public double getRecordsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000d;
+        return seconds > 0 ? processedRecords.get() / seconds : 0;
+    }
+
+    /**
+     * Write the statistics as json file
+     *
+     * @param reportFile file to write
+     * @param files imported files
+     * @throws IOException if the file cannot be written
+     */
+
+    public void writeReport(Path reportFile, List<ExportFile> files) throws IOException {
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), toReport(files));
+    }
+
+    Map<String, Object> toReport(List<ExportFile> files) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        List<String> fileNames = new ArrayList<>();
+        files.forEach(f -> fileNames.add(f.getName()));
+        report.put("files", fileNames);
+        report.put("aborted", aborted);
+        report.put("start", start.toString());
+        report.put("end", Instant.now().toString());
+        report.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        report.put("bytesDownloaded", getBytesDownloaded());
+        report.put("recordsPerSecond", getRecordsPerSecond());
+
+        Map<String, Object> records = new LinkedHashMap<>();
+        records.put("processed", getProcessedRecords());
+        records.put("created", getCreatedRecords());
+        records.put("changed", getChangedRecords());
+        records.put("unchanged", getUnchangedRecords());
+        records.put("skipped", getSkippedRecords());
+        records.put("deleted", getDeletedRecords());
+        records.put("orphaned", getOrphanedRecords());
+        records.put("failed", getFailedRecords());
+        report.put("records", records);
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            stages.put(stage.name().toLowerCase() + "Ms", getStageMillis(stage));
+        }
+        report.put("stages", stages);
+
+        Map<String, Object> api = new LinkedHashMap<>();
+        apiCalls.forEach((type, histogram) -> api.put(type, histogram.toReport()));
+        report.put("apiCalls", api);
+        return report;
+    }
+
+    /**
+     * Merge the reports of several shards. Records, bytes and stage times are summed up, the run lasts from the first start to the last end. The
+     * api calls cannot be merged, the complete reports are listed below the key shards.
+     *
+     * @param shardReports reports by shard
+     * @return the merged report
+     */
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> mergeReports(Map<String, Map<String, Object>> shardReports) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        Instant first = null;
+        Instant last = null;
+        boolean anyAborted = false;
+        long bytes = 0;
+        Map<String, Object> records = new LinkedHashMap<>();
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Map<String, Object> shardReport : shardReports.values()) {
+            report.putIfAbsent("files", shardReport.get("files"));
+            anyAborted |= Boolean.TRUE.equals(shardReport.get("aborted"));
+            Instant shardStart = Instant.parse((String) shardReport.get("start"));
+            Instant shardEnd = Instant.parse((String) shardReport.get("end"));
+            first = first == null || shardStart.isBefore(first) ? shardStart : first;
+            last = last == null || shardEnd.isAfter(last) ? shardEnd : last;
+            bytes += ((Number) shardReport.get("bytesDownloaded")).longValue();
+            sum(records, (Map<String, Object>) shardReport.get("records"));
+            sum(stages, (Map<String, Object>) shardReport.get("stages"));
+        }
+        long durationMs = first == null ? 0 : last.toEpochMilli() - first.toEpochMilli();
+        long processed = records.get("processed") instanceof Number ? ((Number) records.get("processed")).longValue() : 0;
+        report.put("aborted", anyAborted);
+        report.put("start", String.valueOf(first));
+        report.put("end", String.valueOf(last));
+        report.put("durationMs", durationMs);
+        report.put("bytesDownloaded", bytes);
+        report.put("recordsPerSecond", durationMs > 0 ? processed * 1000d / durationMs : 0);
+        report.put("records", records);
+        report.put("stages", stages);
+        report.put("shards", shardReports);
+        return report;
+    }
+
+    private static void sum(Map<String, Object> total, Map<String, Object> values) {
+        if (values != null) {
+            values.forEach((key, value) -> total.merge(key, ((Number) value).longValue(), (a, b) -> (Long) a + (Long) b));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "new: " + getCreatedRecords() + ", changed: " + getChangedRecords() + ", unchanged: " + getUnchangedRecords() + ", skipped: "
+                + getSkippedRecords() + ", deleted: " + getDeletedRecords() + ", failed: " + getFailedRecords();
+    }
+}
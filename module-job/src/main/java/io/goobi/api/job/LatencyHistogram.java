@@ -0,0 +1,95 @@
+package io.goobi.api.job;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of durations with logarithmic buckets. Each power of two is split into four buckets, so percentiles are accurate to about
+ * 20 percent.
+ */
+public class LatencyHistogram {
+
+    private static final double BUCKET_WIDTH = Math.log(2) / 4;
+    private static final int BUCKETS = 160;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Add a measured duration
+     *
+     * @param nanos duration in nanoseconds
+     */
+
+    public void record(long nanos) {
+        long micros = Math.max(nanos / 1000, 1);
+        int bucket = Math.min((int) (Math.log(micros) / BUCKET_WIDTH), BUCKETS - 1);
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the approximated percentile
+     *
+     * @param percentile value between 0 and 100
+     * @return upper bound of the bucket containing the percentile in milliseconds
+     */
+
+    public double getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += counts.get(i);
+            if (sum >= threshold) {
+                return Math.min(Math.exp((i + 1) * BUCKET_WIDTH) / 1000, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return the longest duration in milliseconds
+     */
+
+    public double getMax() {
+        return maxNanos.get() / 1_000_000d;
+    }
+
+    /**
+     * @return the average duration in milliseconds
+     */
+
+    public double getAverage() {
+        long total = count.get();
+        return total == 0 ? 0 : totalNanos.get() / 1_000_000d / total;
+    }
+
+    /**
+     * @return count, average, percentiles and maximum for the run report
+     */
+
+    public Map<String, Object> toReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("count", getCount());
+        report.put("averageMs", getAverage());
+        report.put("p50Ms", getPercentile(50));
+        report.put("p95Ms", getPercentile(95));
+        report.put("p99Ms", getPercentile(99));
+        report.put("maxMs", getMax());
+        return report;
+    }
+}
@@ -0,0 +1,129 @@
+package io.goobi.api.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Mapping stage of the import pipeline.
+ *
+ * The reader passes each object as task to one of several worker threads, while it continues reading the file. Each thread has its own bounded
+ * queue, if it is full, {@link #submit(int, Runnable)} blocks. Tasks with the same key always run in the same thread in the order they were
+ * submitted, so objects with the same identifier are never mapped concurrently.
+ *
+ * If a task throws an exception, the remaining tasks are discarded and the exception is thrown once to the reader, with the next submit or on close.
+ */
+public class MappingStage implements AutoCloseable {
+
+    private static final Runnable END = () -> {
+    };
+
+    private final List<BlockingQueue<Runnable>> queues = new ArrayList<>();
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile RuntimeException failure;
+
+    // the failure was already thrown to the reader
+    private boolean failureReported;
+
+    private boolean closed;
+
+    /**
+     * Start the worker threads
+     *
+     * @param threadCount number of threads
+     * @param queueSize number of tasks that can wait for each thread
+     * @param name prefix of the thread names
+     */
+
+    public MappingStage(int threadCount, int queueSize, String name) {
+        for (int i = 0; i < threadCount; i++) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+            Thread thread = new Thread(() -> work(queue), name + (i + 1));
+            thread.setDaemon(true);
+            queues.add(queue);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    private void work(BlockingQueue<Runnable> queue) {
+        try {
+            while (true) {
+                Runnable task = queue.take();
+                if (task == END) {
+                    return;
+                }
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pass a task to the thread responsible for the key
+     *
+     * @param key routing key, e.g. the hash of the identifier
+     * @param task task to run
+     * @throws RuntimeException the exception of a failed task
+     */
+
+    public void submit(int key, Runnable task) {
+        checkFailure();
+        try {
+            queues.get(Math.floorMod(key, queues.size())).put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the mapping stage", e);
+        }
+    }
+
+    private void checkFailure() {
+        RuntimeException e = failure;
+        if (e != null && !failureReported) {
+            failureReported = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until all submitted tasks are finished
+     *
+     * @throws RuntimeException the exception of a failed task
+     */
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (BlockingQueue<Runnable> queue : queues) {
+                queue.put(END);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            threads.forEach(Thread::interrupt);
+            throw new IllegalStateException("Interrupted while waiting for the mapping stage", e);
+        }
+        checkFailure();
+    }
+}
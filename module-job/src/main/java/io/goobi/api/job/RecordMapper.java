@@ -0,0 +1,263 @@
+package io.goobi.api.job;
+
+import io.goobi.vocabulary.exchange.FieldDefinition;
+import io.goobi.vocabulary.exchange.FieldInstance;
+import io.goobi.vocabulary.exchange.FieldValue;
+import io.goobi.vocabulary.exchange.TranslationInstance;
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+import io.goobi.vocabulary.exchange.VocabularySchema;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts json objects into the fields of a vocabulary record.
+ *
+ * All field definitions and json paths are resolved when the mapper is created, the conversion of a single object only evaluates the
+ * precompiled paths.
+ */
+@Log4j2
+public class RecordMapper {
+
+    private final FieldMapping[] mappings;
+
+    // definition ids of all mapped fields
+    private final Set<Long> definitionIds;
+
+    public RecordMapper(FieldMapping[] mappings) {
+        this.mappings = mappings.clone();
+        definitionIds = new HashSet<>();
+        for (FieldMapping mapping : mappings) {
+            definitionIds.add(mapping.getDefinitionId());
+        }
+    }
+
+    /**
+     * Resolve the configured mapping against the vocabulary schema. Fields that do not exist in the schema are ignored.
+     *
+     * @param jsonMapping field name and json path of each configured field
+     * @param vocabularySchema schema of the vocabulary
+     * @return the mapper
+     */
+
+    public static RecordMapper create(Map<String, String> jsonMapping, VocabularySchema vocabularySchema) {
+        return create(jsonMapping, Collections.emptyMap(), vocabularySchema);
+    }
+
+    /**
+     * Resolve the configured mapping against the vocabulary schema. Fields that do not exist in the schema are ignored.
+     *
+     * @param jsonMapping field name and json path of each configured field
+     * @param fieldOptions conversion settings of the fields, fields without entry use the default settings
+     * @param vocabularySchema schema of the vocabulary
+     * @return the mapper
+     */
+
+    public static RecordMapper create(Map<String, String> jsonMapping, Map<String, FieldOptions> fieldOptions, VocabularySchema vocabularySchema) {
+        Map<String, Long> definitions = new HashMap<>();
+        for (FieldDefinition definition : vocabularySchema.getDefinitions()) {
+            definitions.putIfAbsent(definition.getName(), definition.getId());
+        }
+        List<FieldMapping> mappings = new ArrayList<>();
+        for (Map.Entry<String, String> entry : jsonMapping.entrySet()) {
+            Long definitionId = definitions.get(entry.getKey());
+            if (definitionId == null) {
+                log.debug("Field {} does not exist in the vocabulary, ignoring it", entry.getKey());
+                continue;
+            }
+            FieldOptions options = fieldOptions.getOrDefault(entry.getKey(), FieldOptions.DEFAULT);
+            mappings.add(new FieldMapping(entry.getKey(), entry.getValue(), definitionId, options));
+        }
+        return new RecordMapper(mappings.toArray(new FieldMapping[0]));
+    }
+
+    public int size() {
+        return mappings.length;
+    }
+
+    /**
+     * Write the mapped values of the json object into the record. Existing records are only modified if at least one value changed, the field
+     * instances are only created in this case.
+     *
+     * @param jsonRecord parsed json object
+     * @param vocabRecord new or existing record
+     * @return false, if the record already exists and none of the mapped values changed
+     * @throws IllegalArgumentException if a value does not match the configured field options
+     */
+
+    public boolean apply(Object jsonRecord, VocabularyRecord vocabRecord) {
+        List<List<String[]>> values = new ArrayList<>(mappings.length);
+        for (FieldMapping mapping : mappings) {
+            values.add(mapping.readValues(jsonRecord));
+        }
+
+        if (vocabRecord.getId() != null && !isChanged(vocabRecord, values)) {
+            return false;
+        }
+
+        // remove existing fields
+        Iterator<FieldInstance> iterator = vocabRecord.getFields().iterator();
+        while (iterator.hasNext()) {
+            if (definitionIds.contains(iterator.next().getDefinitionId())) {
+                iterator.remove();
+            }
+        }
+
+        // add new values
+        for (int i = 0; i < mappings.length; i++) {
+            List<String[]> fieldValues = values.get(i);
+            if (fieldValues == null) {
+                continue;
+            }
+            FieldInstance field = new FieldInstance();
+            field.setDefinitionId(mappings[i].getDefinitionId());
+            field.setRecordId(vocabRecord.getId()); // This is either null for new records or existing id for existing records (API expects this like this)
+            if (fieldValues.size() == 1) {
+                field.setValues(List.of(createFieldValue(fieldValues.get(0))));
+            } else {
+                List<FieldValue> list = new ArrayList<>(fieldValues.size());
+                for (String[] translations : fieldValues) {
+                    list.add(createFieldValue(translations));
+                }
+                field.setValues(list);
+            }
+            vocabRecord.getFields().add(field);
+        }
+        return true;
+    }
+
+    /**
+     * Get the values of the mapped fields of a record in a readable form. Translations are prefixed with their language.
+     *
+     * @param vocabRecord record to read
+     * @return values by field name, in the order of the configuration
+     */
+
+    public Map<String, List<String>> describe(VocabularyRecord vocabRecord) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (FieldMapping mapping : mappings) {
+            List<String> values = new ArrayList<>();
+            for (FieldInstance field : vocabRecord.getFields()) {
+                if (field.getDefinitionId() == null || field.getDefinitionId() != mapping.getDefinitionId() || field.getValues() == null) {
+                    continue;
+                }
+                for (FieldValue value : field.getValues()) {
+                    List<String> translations = new ArrayList<>();
+                    if (value.getTranslations() != null) {
+                        for (TranslationInstance translation : value.getTranslations()) {
+                            translations.add(StringUtils.isBlank(translation.getLanguage()) ? translation.getValue()
+                                    : translation.getLanguage() + ": " + translation.getValue());
+                        }
+                    }
+                    values.add(String.join(", ", translations));
+                }
+            }
+            result.put(mapping.getFieldName(), values);
+        }
+        return result;
+    }
+
+    /*
+     * Create a field value from language and text pairs
+     */
+    private static FieldValue createFieldValue(String[] translations) {
+        FieldValue fieldValue = new FieldValue();
+        if (translations.length == 2) {
+            fieldValue.setTranslations(List.of(createTranslation(translations[0], translations[1])));
+        } else {
+            List<TranslationInstance> list = new ArrayList<>(translations.length / 2);
+            for (int j = 0; j < translations.length; j += 2) {
+                list.add(createTranslation(translations[j], translations[j + 1]));
+            }
+            fieldValue.setTranslations(list);
+        }
+        return fieldValue;
+    }
+
+    private static TranslationInstance createTranslation(String language, String value) {
+        TranslationInstance translationInstance = new TranslationInstance();
+        if (language != null) {
+            translationInstance.setLanguage(language);
+        }
+        translationInstance.setValue(value);
+        return translationInstance;
+    }
+
+    /*
+     * Check if any of the new values differs from the values stored in the record. The order of the values and translations is ignored.
+     */
+    private boolean isChanged(VocabularyRecord vocabRecord, List<List<String[]>> values) {
+        Map<Long, List<FieldValue>> existingValues = new HashMap<>();
+        for (FieldInstance field : vocabRecord.getFields()) {
+            if (!definitionIds.contains(field.getDefinitionId()) || field.getValues() == null) {
+                continue;
+            }
+            existingValues.computeIfAbsent(field.getDefinitionId(), k -> new ArrayList<>(1)).addAll(field.getValues());
+        }
+        for (int i = 0; i < mappings.length; i++) {
+            List<FieldValue> existing = existingValues.getOrDefault(mappings[i].getDefinitionId(), Collections.emptyList());
+            List<String[]> fieldValues = values.get(i);
+            if (fieldValues == null) {
+                if (!existing.isEmpty()) {
+                    return true;
+                }
+            } else if (existing.size() != fieldValues.size()) {
+                return true;
+            } else if (fieldValues.size() == 1 && fieldValues.get(0).length == 2) {
+                // single value without translations, compare directly
+                List<TranslationInstance> translations = existing.get(0).getTranslations();
+                if (translations == null || translations.size() != 1 || !fieldValues.get(0)[1].equals(translations.get(0).getValue())
+                        || !isSameLanguage(fieldValues.get(0)[0], translations.get(0).getLanguage())) {
+                    return true;
+                }
+            } else if (!toComparableValues(fieldValues).equals(toComparableValuesOfFields(existing))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSameLanguage(String language, String existingLanguage) {
+        return StringUtils.isBlank(language) ? StringUtils.isBlank(existingLanguage) : language.equals(existingLanguage);
+    }
+
+    /*
+     * Sorted representation of the values, each value is represented by its sorted language and text pairs
+     */
+    private static List<String> toComparableValues(List<String[]> values) {
+        List<String> result = new ArrayList<>(values.size());
+        for (String[] translations : values) {
+            List<String> pairs = new ArrayList<>(translations.length / 2);
+            for (int j = 0; j < translations.length; j += 2) {
+                pairs.add(StringUtils.defaultString(translations[j]) + '\u0001' + translations[j + 1]);
+            }
+            Collections.sort(pairs);
+            result.add(String.join("\u0002", pairs));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static List<String> toComparableValuesOfFields(List<FieldValue> values) {
+        List<String[]> converted = new ArrayList<>(values.size());
+        for (FieldValue value : values) {
+            List<TranslationInstance> translations = value.getTranslations() == null ? Collections.emptyList() : value.getTranslations();
+            String[] pairs = new String[translations.size() * 2];
+            for (int j = 0; j < translations.size(); j++) {
+                pairs[2 * j] = translations.get(j).getLanguage();
+                pairs[2 * j + 1] = translations.get(j).getValue();
+            }
+            converted.add(pairs);
+        }
+        return toComparableValues(converted);
+    }
+}
@@ -0,0 +1,262 @@
+package io.goobi.api.job;
+
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Save stage of the import.
+ *
+ * Records are passed to the sink by a fixed number of threads. The number of records waiting to be saved is limited, if the limit is reached,
+ * {@link #submit(VocabularyRecord)} blocks until a thread is available again. Failed records are collected, the caller can cancel the stage, e.g.
+ * if too many records failed.
+ *
+ * Records can be grouped into batches. A {@link BatchRecordSink} receives each batch with a single call, if this fails, the records of the batch are
+ * saved one by one. Other sinks save the records of a batch one after another within the same task.
+ */
+@Log4j2
+public class RecordSaver implements AutoCloseable {
+
+    private final RecordSink sink;
+
+    private final int batchSize;
+
+    // records collected for the next batch
+    private List<VocabularyRecord> currentBatch;
+
+    // gets called for each successfully saved record
+    @Setter
+    private Consumer<VocabularyRecord> savedListener;
+
+    // gets called for each record that could not be saved
+    @Setter
+    private BiConsumer<VocabularyRecord, Exception> failureListener;
+
+    // gets called for each record after it was saved or failed
+    @Setter
+    private Consumer<VocabularyRecord> finishedListener;
+
+    // null if records are saved in the calling thread
+    private final ExecutorService executor;
+
+    // limits the number of records in the queue or in progress
+    private final Semaphore permits;
+
+    private final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong savedRecords = new AtomicLong();
+
+    // set if the import was cancelled, the remaining records are discarded
+    private volatile boolean cancelled;
+
+    /**
+     * Create a new save stage
+     *
+     * @param sink target for the records
+     * @param threads number of threads, 1 or less saves the records in the calling thread
+     * @param queueSize number of records that can wait for a free thread
+     */
+
+    public RecordSaver(RecordSink sink, int threads, int queueSize) {
+        this(sink, threads, queueSize, 1);
+    }
+
+    /**
+     * Create a new save stage that groups the records into batches
+     *
+     * @param sink target for the records
+     * @param threads number of threads, 1 or less saves the records in the calling thread
+     * @param queueSize number of records that can wait for a free thread
+     * @param batchSize number of records to save within a single task
+     */
+
+    public RecordSaver(RecordSink sink, int threads, int queueSize, int batchSize) {
+        this.sink = sink;
+        this.batchSize = Math.max(batchSize, 1);
+        currentBatch = new ArrayList<>(this.batchSize);
+        if (threads > 1) {
+            AtomicInteger threadCounter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "heris-save-" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            permits = new Semaphore(threads * this.batchSize + Math.max(queueSize, 0));
+        } else {
+            executor = null;
+            permits = null;
+        }
+    }
+
+    /**
+     * Save the record, either directly or in one of the worker threads
+     *
+     * @param vocabRecord record to save
+     */
+
+    public void submit(VocabularyRecord vocabRecord) {
+        if (cancelled) {
+            throw new IllegalStateException("The save stage was cancelled");
+        }
+        if (executor != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                saveBatch(List.of(vocabRecord));
+                return;
+            }
+        }
+        List<VocabularyRecord> batch = null;
+        synchronized (this) {
+            currentBatch.add(vocabRecord);
+            if (currentBatch.size() >= batchSize) {
+                batch = currentBatch;
+                currentBatch = new ArrayList<>(batchSize);
+            }
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    private void dispatch(List<VocabularyRecord> batch) {
+        if (executor == null) {
+            saveBatch(batch);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    saveBatch(batch);
+                } finally {
+                    permits.release(batch.size());
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release(batch.size());
+            throw e;
+        }
+    }
+
+    private void saveBatch(List<VocabularyRecord> batch) {
+        if (cancelled) {
+            return;
+        }
+        if (batch.size() > 1 && sink instanceof BatchRecordSink) {
+            try {
+                ((BatchRecordSink) sink).saveAll(batch);
+                savedRecords.addAndGet(batch.size());
+                if (savedListener != null) {
+                    batch.forEach(savedListener);
+                }
+                if (finishedListener != null) {
+                    batch.forEach(finishedListener);
+                }
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Saving a batch of {} records failed, retrying them one by one: {}", batch.size(), e.getMessage());
+            }
+        }
+        for (VocabularyRecord vocabRecord : batch) {
+            save(vocabRecord);
+        }
+    }
+
+    private void save(VocabularyRecord vocabRecord) {
+        boolean saved = false;
+        try {
+            sink.save(vocabRecord);
+            savedRecords.incrementAndGet();
+            saved = true;
+        } catch (RuntimeException e) {
+            failures.add(new Failure(vocabRecord, e));
+            if (failureListener != null) {
+                failureListener.accept(vocabRecord, e);
+            }
+        }
+        if (saved && savedListener != null) {
+            savedListener.accept(vocabRecord);
+        }
+        if (finishedListener != null) {
+            finishedListener.accept(vocabRecord);
+        }
+    }
+
+    /**
+     * Wait until all submitted records are saved
+     */
+
+    @Override
+    public void close() {
+        List<VocabularyRecord> batch;
+        synchronized (this) {
+            batch = currentBatch;
+            currentBatch = new ArrayList<>(batchSize);
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Waiting for the remaining records to be saved");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Cancel the save stage. Records waiting in the queue are discarded, further submits fail with an {@link IllegalStateException}.
+     */
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getSavedRecords() {
+        return savedRecords.get();
+    }
+
+    public List<Failure> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    /**
+     * A record that could not be saved
+     */
+    public static class Failure {
+        @Getter
+        private final VocabularyRecord vocabRecord;
+        @Getter
+        private final Exception exception;
+
+        public Failure(VocabularyRecord vocabRecord, Exception exception) {
+            this.vocabRecord = vocabRecord;
+            this.exception = exception;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.goobi.api.job;
+
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+
+/**
+ * Target for converted vocabulary records, usually the save method of the vocabulary record api
+ */
+@FunctionalInterface
+public interface RecordSink {
+
+    /**
+     * Persist a single record
+     *
+     * @param vocabRecord record to save
+     */
+    void save(VocabularyRecord vocabRecord);
+}
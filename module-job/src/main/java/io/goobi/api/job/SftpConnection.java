@@ -0,0 +1,170 @@
+package io.goobi.api.job;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Sftp connection to the HERIS export server.
+ *
+ * The session is opened on first use and reused for all following operations of the run. Failed operations are repeated on a new session with
+ * an exponential backoff, so a short network problem does not cancel the whole import.
+ */
+@Log4j2
+public class SftpConnection implements AutoCloseable {
+
+    /**
+     * Operation on an open sftp channel
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+        T run(ChannelSftp channel) throws SftpException, IOException;
+    }
+
+    private final String username;
+    private final String password;
+    private final String keyfile;
+    private final String hostname;
+    private final int port;
+    private final String knownHosts;
+    private final String pubkeyAcceptedAlgorithms;
+
+    // timeout to open the session and the channel, in milliseconds
+    @Getter
+    @Setter
+    private int connectTimeout = 30000;
+
+    // socket read timeout, in milliseconds
+    @Getter
+    @Setter
+    private int ioTimeout = 60000;
+
+    // number of retries after a failed operation
+    @Getter
+    @Setter
+    private int retries = 3;
+
+    // delay before the first retry in milliseconds, it gets doubled for each further retry
+    @Getter
+    @Setter
+    private long retryDelay = 2000;
+
+    private Session session;
+    private ChannelSftp channel;
+
+    public SftpConnection(String username, String password, String keyfile, String hostname, int port, String knownHosts,
+            String pubkeyAcceptedAlgorithms) {
+        this.username = username;
+        this.password = password;
+        this.keyfile = keyfile;
+        this.hostname = hostname;
+        this.port = port;
+        this.knownHosts = knownHosts;
+        this.pubkeyAcceptedAlgorithms = pubkeyAcceptedAlgorithms;
+    }
+
+    /**
+     * Run the operation on the open channel. If the connection fails, the session is closed and the operation is repeated on a new session.
+     * Errors reported by the server, like a missing file, are not repeated.
+     *
+     * @param operation operation to run
+     * @return result of the operation
+     * @throws IOException if the operation still fails after all retries
+     */
+
+    public <T> T execute(Operation<T> operation) throws IOException {
+        long delay = retryDelay;
+        for (int attempt = 0;; attempt++) {
+            try {
+                return operation.run(getChannel());
+            } catch (JSchException | SftpException | IOException e) {
+                if (!isRetryable(e) || attempt >= retries) {
+                    throw e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                log.warn("Sftp operation failed, retrying in {} ms ({}/{}): {}", delay, attempt + 1, retries, e.getMessage());
+                disconnect();
+                sleep(delay);
+                delay *= 2;
+            }
+        }
+    }
+
+    /*
+     * Server side errors are permanent, everything else is treated as a connection problem
+     */
+    static boolean isRetryable(Exception e) {
+        if (e instanceof SftpException) {
+            int id = ((SftpException) e).id;
+            return id != ChannelSftp.SSH_FX_NO_SUCH_FILE && id != ChannelSftp.SSH_FX_PERMISSION_DENIED;
+        }
+        return true;
+    }
+
+    /*
+     * Wait before the next attempt, overwritten in tests
+     */
+    void sleep(long delay) throws IOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the sftp retry", e);
+        }
+    }
+
+    /*
+     * Get the open channel, a new session is opened if there is none or it was closed
+     */
+    ChannelSftp getChannel() throws JSchException {
+        if (channel != null && channel.isConnected() && session.isConnected()) {
+            return channel;
+        }
+        disconnect();
+        JSch jsch = new JSch();
+        if (StringUtils.isNotBlank(keyfile) && StringUtils.isNotBlank(password)) {
+            jsch.addIdentity(keyfile, password);
+        } else if (StringUtils.isNotBlank(keyfile)) {
+            jsch.addIdentity(keyfile);
+        }
+        jsch.setKnownHosts(knownHosts);
+        session = jsch.getSession(username, hostname, port);
+        if (StringUtils.isBlank(keyfile)) {
+            session.setPassword(password);
+        }
+        if (StringUtils.isNotBlank(pubkeyAcceptedAlgorithms)) {
+            Properties config = new Properties();
+            config.put("PubkeyAcceptedAlgorithms", pubkeyAcceptedAlgorithms);
+            session.setConfig(config);
+        }
+        session.setTimeout(ioTimeout);
+        session.connect(connectTimeout);
+        channel = (ChannelSftp) session.openChannel("sftp");
+        channel.connect(connectTimeout);
+        return channel;
+    }
+
+    private void disconnect() {
+        if (channel != null) {
+            channel.disconnect();
+            channel = null;
+        }
+        if (session != null) {
+            session.disconnect();
+            session = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+    }
+}
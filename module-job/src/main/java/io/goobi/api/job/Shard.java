@@ -0,0 +1,109 @@
+package io.goobi.api.job;
+
+import lombok.Getter;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Part of the export imported by one node, configured as index and number of shards, e.g. 2/4.
+ *
+ * Each object belongs to exactly one shard, depending on the hash of its identifier. The hash of {@link String#hashCode()} is defined by the
+ * java specification, so all nodes assign an identifier to the same shard. Objects without identifier belong to the first shard, so their errors
+ * are reported only once.
+ */
+public class Shard {
+
+    // 1 based index of this shard
+    @Getter
+    private final int index;
+
+    @Getter
+    private final int count;
+
+    public Shard(int index, int count) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Parse the configured shard
+     *
+     * @param value index and number of shards separated by a slash, e.g. 2/4
+     * @return the shard or null, if the value is empty
+     * @throws IllegalArgumentException if the value cannot be parsed
+     */
+
+    public static Shard parse(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        String[] parts = value.trim().split("\\s*/\\s*");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid shard " + value + ", expected index/count");
+        }
+        try {
+            return new Shard(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard " + value + ", expected index/count", e);
+        }
+    }
+
+    /**
+     * Check if an object belongs to this shard
+     *
+     * @param identifier identifier of the object or null
+     * @return true if the object is imported by this shard
+     */
+
+    public boolean contains(String identifier) {
+        if (identifier == null) {
+            return index == 1;
+        }
+        return getShardIndex(identifier, count) == index;
+    }
+
+    /**
+     * Get the shard of an identifier. The hash code is mixed first, so the shards do not correlate with other partitions using the plain hash code,
+     * e.g. the mapping threads.
+     *
+     * @param identifier identifier of the object
+     * @param count number of shards
+     * @return 1 based index of the shard
+     */
+
+    public static int getShardIndex(String identifier, int count) {
+        int hash = identifier.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, count) + 1;
+    }
+
+    /**
+     * Get the name of a file only used by this shard, the shard is inserted in front of the file extension
+     *
+     * @param fileName name of the file without sharding
+     * @return the file name, e.g. heris-import-report-2of4.json
+     */
+
+    public String getFileName(String fileName) {
+        int extension = fileName.lastIndexOf('.');
+        if (extension <= 0) {
+            return fileName + getSuffix();
+        }
+        return fileName.substring(0, extension) + getSuffix() + fileName.substring(extension);
+    }
+
+    private String getSuffix() {
+        return "-" + index + "of" + count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,123 @@
+package io.goobi.api.job;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stream of a remote file that is read while it is downloaded.
+ *
+ * All bytes read from the remote stream are appended to a local part file, so an interrupted transfer can be resumed and the complete file is
+ * available locally afterwards.
+ */
+public class StreamingDownload extends FilterInputStream {
+
+    private final OutputStream partOutput;
+
+    // bytes received in this transfer
+    private long bytes;
+
+    // time spent receiving and storing the bytes
+    private long nanos;
+
+    private boolean closed;
+
+    /**
+     * Create the stream
+     *
+     * @param remote stream of the remote file, starting behind the bytes already stored in the part file
+     * @param partFile local file to append the bytes to
+     * @throws IOException if the part file cannot be opened
+     */
+
+    public StreamingDownload(InputStream remote, Path partFile) throws IOException {
+        super(remote);
+        partOutput = Files.newOutputStream(partFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        if (b != -1) {
+            partOutput.write(b);
+            bytes++;
+        }
+        nanos += System.nanoTime() - start;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int count = super.read(buffer, offset, length);
+        if (count > 0) {
+            partOutput.write(buffer, offset, count);
+            bytes += count;
+        }
+        nanos += System.nanoTime() - start;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes must be stored as well
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Download the bytes that were not read yet, e.g. trailing whitespace behind the json document
+     *
+     * @throws IOException if the transfer fails
+     */
+
+    public void finish() throws IOException {
+        if (closed) {
+            throw new IOException("The download was closed before all bytes were received");
+        }
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // only store the remaining bytes
+        }
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return time spent waiting for the remote stream and writing the part file, the time the caller needs to process the bytes is not included
+     */
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            partOutput.close();
+        }
+    }
+}
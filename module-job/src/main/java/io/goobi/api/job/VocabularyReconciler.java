@@ -0,0 +1,126 @@
+package io.goobi.api.job;
+
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+import io.goobi.workflow.api.vocabulary.VocabularyRecordAPI;
+import io.goobi.workflow.api.vocabulary.helper.ExtendedVocabularyRecord;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Comparison of all records of the vocabulary with the identifiers of a complete export.
+ *
+ * The records are requested page by page and only the ids of orphaned records are kept, so the required memory does not depend on the size of
+ * the records. Orphaned records are deleted after all pages were read, deleting them while paging would move other records to pages that were
+ * already read.
+ */
+@Log4j2
+public class VocabularyReconciler {
+
+    private final VocabularyRecordAPI recordAPI;
+
+    private final long vocabularyId;
+
+    // definition id of the identifier field
+    private final long identifierFieldId;
+
+    private final int pageSize;
+
+    public VocabularyReconciler(VocabularyRecordAPI recordAPI, long vocabularyId, long identifierFieldId, int pageSize) {
+        this.recordAPI = recordAPI;
+        this.vocabularyId = vocabularyId;
+        this.identifierFieldId = identifierFieldId;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Page through the vocabulary and find the records whose identifier is not part of the export. Records without identifier are ignored.
+     *
+     * @param exportIdentifiers identifiers of the export
+     * @param responsible selects the identifiers to check, e.g. the identifiers of a shard
+     * @param listener receives the identifier of each orphaned record
+     * @return ids of the orphaned records
+     */
+
+    public long[] findOrphans(IdentifierSet exportIdentifiers, Predicate<String> responsible, Consumer<String> listener) {
+        long[] orphans = new long[64];
+        int orphanCount = 0;
+        long checked = 0;
+        int page = 0;
+        while (true) {
+            List<ExtendedVocabularyRecord> content = recordAPI.list(vocabularyId)
+                    .pageSize(pageSize)
+                    .page(page)
+                    .request()
+                    .getContent();
+            if (content == null || content.isEmpty()) {
+                break;
+            }
+            for (ExtendedVocabularyRecord vocabRecord : content) {
+                String identifier = VocabularyRecordIndex.getFirstValue(vocabRecord, identifierFieldId);
+                if (identifier == null || vocabRecord.getId() == null || !responsible.test(identifier)) {
+                    continue;
+                }
+                checked++;
+                if (!exportIdentifiers.contains(identifier)) {
+                    if (orphanCount == orphans.length) {
+                        orphans = Arrays.copyOf(orphans, orphanCount * 2);
+                    }
+                    orphans[orphanCount++] = vocabRecord.getId();
+                    listener.accept(identifier);
+                }
+            }
+            if (content.size() < pageSize) {
+                break;
+            }
+            page++;
+        }
+        log.info("Compared {} records of vocabulary {} with {} identifiers of the export, found {} orphaned records", checked, vocabularyId,
+                exportIdentifiers.size(), orphanCount);
+        return Arrays.copyOf(orphans, orphanCount);
+    }
+
+    /**
+     * Delete the records one by one. The progress is logged after each interval. If no record of an interval could be deleted, the api is probably
+     * not available and the remaining records are skipped.
+     *
+     * @param recordIds ids of the records to delete
+     * @param logInterval number of records after which the progress is logged
+     * @param statistics counters of the current run
+     * @return number of deleted records
+     */
+
+    public int deleteRecords(long[] recordIds, int logInterval, ImportStatistics statistics) {
+        int interval = Math.max(logInterval, 1);
+        int deleted = 0;
+        for (int from = 0; from < recordIds.length; from += interval) {
+            int to = Math.min(from + interval, recordIds.length);
+            int intervalDeleted = 0;
+            for (int i = from; i < to; i++) {
+                VocabularyRecord vocabRecord = new VocabularyRecord();
+                vocabRecord.setId(recordIds[i]);
+                vocabRecord.setVocabularyId(vocabularyId);
+                long start = System.nanoTime();
+                try {
+                    recordAPI.delete(vocabRecord);
+                    statistics.recordDeleted();
+                    intervalDeleted++;
+                } catch (RuntimeException e) {
+                    log.error("Record {} could not be deleted: {}", recordIds[i], e.getMessage());
+                } finally {
+                    statistics.addApiCall("delete", start);
+                }
+            }
+            deleted += intervalDeleted;
+            log.info("Deleted {} of {} orphaned records", deleted, recordIds.length);
+            if (intervalDeleted == 0) {
+                log.error("None of the last {} records could be deleted, skipping the remaining {} records", to - from, recordIds.length - to);
+                break;
+            }
+        }
+        return deleted;
+    }
+}
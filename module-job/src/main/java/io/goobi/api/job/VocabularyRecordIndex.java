@@ -0,0 +1,146 @@
+package io.goobi.api.job;
+
+import io.goobi.vocabulary.exchange.FieldInstance;
+import io.goobi.vocabulary.exchange.FieldValue;
+import io.goobi.vocabulary.exchange.TranslationInstance;
+import io.goobi.vocabulary.exchange.VocabularyRecord;
+import io.goobi.workflow.api.vocabulary.VocabularyRecordAPI;
+import io.goobi.workflow.api.vocabulary.helper.ExtendedVocabularyRecord;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of all records of a vocabulary, keyed by the value of the identifier field.
+ *
+ * The index is filled once per run by paging through the vocabulary, afterwards each lookup is a map access instead of a search request.
+ */
+@Log4j2
+public class VocabularyRecordIndex {
+
+    // definition id of the identifier field
+    @Getter
+    private final long identifierFieldId;
+
+    private final Map<String, ExtendedVocabularyRecord> records = new ConcurrentHashMap<>();
+
+    // identifiers used by more than one record
+    private final Set<String> duplicates = ConcurrentHashMap.newKeySet();
+
+    public VocabularyRecordIndex(long identifierFieldId) {
+        this.identifierFieldId = identifierFieldId;
+    }
+
+    /**
+     * Page through all records of the vocabulary and add them to a new index
+     *
+     * @param recordAPI api to use
+     * @param vocabularyId id of the vocabulary
+     * @param identifierFieldId definition id of the identifier field
+     * @param pageSize number of records to request at once
+     * @return the filled index
+     */
+
+    public static VocabularyRecordIndex load(VocabularyRecordAPI recordAPI, long vocabularyId, long identifierFieldId, int pageSize) {
+        VocabularyRecordIndex index = new VocabularyRecordIndex(identifierFieldId);
+        int page = 0;
+        while (true) {
+            List<ExtendedVocabularyRecord> content = recordAPI.list(vocabularyId)
+                    .pageSize(pageSize)
+                    .page(page)
+                    .request()
+                    .getContent();
+            if (content == null || content.isEmpty()) {
+                break;
+            }
+            content.forEach(index::add);
+            if (content.size() < pageSize) {
+                break;
+            }
+            page++;
+        }
+        log.info("Loaded {} records of vocabulary {} in {} pages", index.size(), vocabularyId, page + 1);
+        return index;
+    }
+
+    /**
+     * Add a record to the index. Records without identifier are ignored.
+     *
+     * @param vocabRecord record to add
+     */
+
+    public void add(ExtendedVocabularyRecord vocabRecord) {
+        String identifier = getFirstValue(vocabRecord, identifierFieldId);
+        if (identifier == null) {
+            return;
+        }
+        if (records.putIfAbsent(identifier, vocabRecord) != null) {
+            duplicates.add(identifier);
+        }
+    }
+
+    /**
+     * Register a record under the given identifier, e.g. a new record that is not saved yet
+     *
+     * @param identifier value of the identifier field
+     * @param vocabRecord record to add
+     * @return the record that was already registered for the identifier, or null
+     */
+
+    public ExtendedVocabularyRecord putIfAbsent(String identifier, ExtendedVocabularyRecord vocabRecord) {
+        return records.putIfAbsent(identifier, vocabRecord);
+    }
+
+    /**
+     * Find the record with the given identifier
+     *
+     * @param identifier value of the identifier field
+     * @return the record or null, if the identifier is unknown
+     * @throws IllegalArgumentException if more than one record uses the identifier
+     */
+
+    public ExtendedVocabularyRecord find(String identifier) {
+        if (duplicates.contains(identifier)) {
+            throw new IllegalArgumentException("Found vocabulary record not unique, skipping import of this entry");
+        }
+        return records.get(identifier);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Get the first value of the field with the given definition id
+     *
+     * @param vocabRecord record to read
+     * @param definitionId id of the field definition
+     * @return the value or null
+     */
+
+    public static String getFirstValue(VocabularyRecord vocabRecord, long definitionId) {
+        if (vocabRecord.getFields() == null) {
+            return null;
+        }
+        for (FieldInstance field : vocabRecord.getFields()) {
+            if (field.getDefinitionId() == null || field.getDefinitionId() != definitionId || field.getValues() == null) {
+                continue;
+            }
+            for (FieldValue value : field.getValues()) {
+                if (value.getTranslations() == null) {
+                    continue;
+                }
+                for (TranslationInstance translation : value.getTranslations()) {
+                    if (translation.getValue() != null) {
+                        return translation.getValue();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,19 @@
+package io.goobi.api.job;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompression of zstd files. zstd-jni is not part of Goobi workflow, this class can only be used if the library was added to the lib folder.
+ */
+final class ZstdSupport {
+
+    private ZstdSupport() {
+    }
+
+    static InputStream decompress(InputStream is) throws IOException {
+        return new ZstdInputStream(is);
+    }
+}
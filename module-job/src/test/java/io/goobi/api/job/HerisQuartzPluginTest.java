@@ -1,9 +1,16 @@
 package io.goobi.api.job;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
 import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.forms.SpracheForm;
 import de.sub.goobi.helper.Helper;
 import io.goobi.vocabulary.exchange.FieldDefinition;
+import io.goobi.vocabulary.exchange.FieldInstance;
+import io.goobi.vocabulary.exchange.FieldValue;
+import io.goobi.vocabulary.exchange.TranslationInstance;
 import io.goobi.vocabulary.exchange.Vocabulary;
 import io.goobi.vocabulary.exchange.VocabularyRecord;
 import io.goobi.vocabulary.exchange.VocabularySchema;
@@ -26,19 +33,36 @@ import org.powermock.api.easymock.PowerMock;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ ConfigurationHelper.class, VocabularyAPIManager.class, Helper.class })
@@ -72,6 +96,7 @@ public class HerisQuartzPluginTest {
     @Before
     public void setUp() throws Exception {
         idCounter = 0;
+        ConfigurationCache.clear();
 
         PowerMock.mockStatic(ConfigurationHelper.class);
         ConfigurationHelper configurationHelper = EasyMock.createMock(ConfigurationHelper.class);
@@ -197,6 +222,50 @@ public class HerisQuartzPluginTest {
         assertEquals(9, plugin.getJsonMapping().size());
     }
 
+    @Test
+    public void testExecuteWithoutNewFile() throws Exception {
+        Files.createDirectories(Paths.get("target/heris-empty"));
+
+        // any call of the vocabulary api fails the test
+        VocabularyAPI vocabularyAPI = EasyMock.createStrictMock(VocabularyAPI.class);
+        VocabularySchemaAPI vocabularySchemaAPI = EasyMock.createStrictMock(VocabularySchemaAPI.class);
+        VocabularyRecordAPI vocabularyRecordAPI = EasyMock.createStrictMock(VocabularyRecordAPI.class);
+        EasyMock.replay(vocabularyAPI, vocabularySchemaAPI, vocabularyRecordAPI);
+        PowerMock.mockStatic(VocabularyAPIManager.class);
+        VocabularyAPIManager vocabularyAPIManager = EasyMock.createMock(VocabularyAPIManager.class);
+        EasyMock.expect(VocabularyAPIManager.getInstance()).andReturn(vocabularyAPIManager).anyTimes();
+        EasyMock.expect(vocabularyAPIManager.vocabularies()).andReturn(vocabularyAPI).anyTimes();
+        EasyMock.expect(vocabularyAPIManager.vocabularySchemas()).andReturn(vocabularySchemaAPI).anyTimes();
+        EasyMock.expect(vocabularyAPIManager.vocabularyRecords()).andReturn(vocabularyRecordAPI).anyTimes();
+        PowerMock.replay(VocabularyAPIManager.class);
+        EasyMock.replay(vocabularyAPIManager);
+
+        HerisQuartzPlugin plugin = new HerisQuartzPlugin() {
+            @Override
+            public String getJobName() {
+                return "intranda_quartz_herisJob_empty";
+            }
+        };
+        plugin.execute();
+
+        EasyMock.verify(vocabularyAPI, vocabularySchemaAPI, vocabularyRecordAPI);
+        assertNull(plugin.getVocabulary());
+    }
+
+    @Test
+    public void testConfigurationCache() throws Exception {
+        HerisQuartzPlugin first = new HerisQuartzPlugin();
+        first.parseConfiguration();
+        HerisQuartzPlugin second = new HerisQuartzPlugin();
+        second.parseConfiguration();
+        assertSame(first.getRecordMapper(), second.getRecordMapper());
+
+        ConfigurationCache.invalidateVocabulary("HERIS");
+        HerisQuartzPlugin third = new HerisQuartzPlugin();
+        third.parseConfiguration();
+        assertNotSame(first.getRecordMapper(), third.getRecordMapper());
+    }
+
     // enable this only if sftp server is installed and configured.
     // set environment variables SFTP_USERNAME and SFTP_PASSWORD
     @Test
@@ -208,10 +277,165 @@ public class HerisQuartzPluginTest {
         String password = System.getenv("SFTP_PASSWORD");
         plugin.setUsername(username);
         plugin.setPassword(password);
+        // without server the retries would only delay the test
+        plugin.setSftpRetries(0);
 
         plugin.getLatestHerisFile();
     }
 
+    @Test
+    public void testSftpRetryable() {
+        assertFalse(SftpConnection.isRetryable(new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE, "no such file")));
+        assertFalse(SftpConnection.isRetryable(new SftpException(ChannelSftp.SSH_FX_PERMISSION_DENIED, "permission denied")));
+        assertTrue(SftpConnection.isRetryable(new SftpException(ChannelSftp.SSH_FX_CONNECTION_LOST, "connection lost")));
+        assertTrue(SftpConnection.isRetryable(new JSchException("session is down")));
+        assertTrue(SftpConnection.isRetryable(new IOException("read timed out")));
+    }
+
+    @Test
+    public void testSftpRetryWithBackoff() throws Exception {
+        List<Long> delays = new LinkedList<>();
+        SftpConnection connection = new SftpConnection("user", "password", null, "localhost", 22, null, null) {
+            @Override
+            ChannelSftp getChannel() throws JSchException {
+                throw new JSchException("connection refused");
+            }
+
+            @Override
+            void sleep(long delay) {
+                delays.add(delay);
+            }
+        };
+        connection.setRetryDelay(100);
+        connection.setRetries(3);
+        try {
+            connection.execute(channel -> "never");
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof JSchException);
+        }
+        assertEquals(List.of(100L, 200L, 400L), delays);
+    }
+
+    @Test
+    public void testSftpMissingFileNotRetried() throws Exception {
+        List<Long> delays = new LinkedList<>();
+        int[] attempts = new int[1];
+        SftpConnection connection = new SftpConnection("user", "password", null, "localhost", 22, null, null) {
+            @Override
+            ChannelSftp getChannel() {
+                return null;
+            }
+
+            @Override
+            void sleep(long delay) {
+                delays.add(delay);
+            }
+        };
+        try {
+            connection.execute(channel -> {
+                attempts[0]++;
+                throw new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE, "no such file");
+            });
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof SftpException);
+        }
+        assertEquals(1, attempts[0]);
+        assertTrue(delays.isEmpty());
+
+        // a lost connection is repeated until the operation succeeds
+        attempts[0] = 0;
+        String result = connection.execute(channel -> {
+            if (++attempts[0] < 3) {
+                throw new SftpException(ChannelSftp.SSH_FX_CONNECTION_LOST, "connection lost");
+            }
+            return "done";
+        });
+        assertEquals("done", result);
+        assertEquals(3, attempts[0]);
+        assertEquals(List.of(2000L, 4000L), delays);
+    }
+
+    @Test
+    public void testStreamingDownloadResumed() throws Exception {
+        Path partFile = Files.createTempDirectory("heris").resolve("export.json.part");
+        Files.write(partFile, "[1, ".getBytes(StandardCharsets.UTF_8));
+        try (StreamingDownload download = new StreamingDownload(new ByteArrayInputStream("2, 3]\n".getBytes(StandardCharsets.UTF_8)), partFile)) {
+            byte[] buffer = new byte[3];
+            assertEquals(3, download.read(buffer, 0, buffer.length));
+            assertEquals('3', download.read());
+            // the remaining bytes are not read by the caller
+            download.finish();
+            assertEquals(6, download.getBytes());
+        }
+        assertEquals("[1, 2, 3]\n", Files.readString(partFile));
+    }
+
+    @Test
+    public void testProcessDownloadStoresTrailingBytes() throws Exception {
+        HerisQuartzPlugin plugin = new HerisQuartzPlugin();
+        plugin.parseConfiguration();
+        Path folder = Files.createTempDirectory("heris");
+        plugin.setHerisFolder(folder.toString());
+
+        // the json parser stops at the end of the json file, the directory of the zip archive is never read by it
+        byte[] content = Files.readAllBytes(Paths.get(resourcesFolder, "sample.zip"));
+        InputStream remote = new ByteArrayInputStream(content) {
+            private boolean closed;
+
+            @Override
+            public synchronized int read() {
+                checkOpen();
+                return super.read();
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                checkOpen();
+                return super.read(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+
+            private void checkOpen() {
+                if (closed) {
+                    throw new IllegalStateException("remote stream is closed");
+                }
+            }
+        };
+        ChannelSftp channel = EasyMock.createMock(ChannelSftp.class);
+        EasyMock.expect(channel.get("/tmp/sample.zip", null, 0L)).andReturn(remote);
+        EasyMock.replay(channel);
+        SftpConnection connection = new SftpConnection("user", "password", null, "localhost", 22, null, null) {
+            @Override
+            ChannelSftp getChannel() {
+                return channel;
+            }
+        };
+        Whitebox.setInternalState(plugin, "sftpConnection", connection);
+
+        ExportFile file = new ExportFile("sample.zip", content.length, 1);
+        List<VocabularyRecord> records = new LinkedList<>();
+        long count = plugin.processDownload(file, null, r -> {
+            if (r != null) {
+                records.add(r);
+            }
+        });
+        EasyMock.verify(channel);
+
+        assertEquals(87, count);
+        assertEquals(87, records.size());
+        Path destination = folder.resolve("sample.zip");
+        assertEquals(destination, file.getLocalFile());
+        assertArrayEquals(content, Files.readAllBytes(destination));
+        assertFalse(Files.exists(folder.resolve("sample.zip.part")));
+        assertEquals(content.length, plugin.getStatistics().getBytesDownloaded());
+    }
+
     @Test
     public void testSftpUsageDeactivated() {
 
@@ -243,5 +467,526 @@ public class HerisQuartzPluginTest {
         List<VocabularyRecord> parsedRecords = plugin.generateRecordsFromFile();
 
         assertEquals(87, parsedRecords.size());
+        assertEquals(87, plugin.getStatistics().getCreatedRecords());
+        assertEquals(0, plugin.getStatistics().getUnchangedRecords());
+    }
+
+    @Test
+    public void testRecordIndex() throws Exception {
+        long identifierFieldId = vocabularySchema.getDefinitions().get(0).getId();
+        ExtendedVocabularyRecord first = newRecordWithIdentifier(identifierFieldId, "112518");
+        ExtendedVocabularyRecord second = newRecordWithIdentifier(identifierFieldId, "93455");
+
+        VocabularyRecordIndex index = new VocabularyRecordIndex(identifierFieldId);
+        index.add(first);
+        index.add(second);
+        index.add(newEmptyRecord());
+
+        assertEquals(2, index.size());
+        assertSame(first, index.find("112518"));
+        assertSame(second, index.find("93455"));
+        assertNull(index.find("1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRecordIndexDuplicateIdentifier() throws Exception {
+        long identifierFieldId = vocabularySchema.getDefinitions().get(0).getId();
+        VocabularyRecordIndex index = new VocabularyRecordIndex(identifierFieldId);
+        index.add(newRecordWithIdentifier(identifierFieldId, "112518"));
+        index.add(newRecordWithIdentifier(identifierFieldId, "112518"));
+
+        index.find("112518");
+    }
+
+    @Test
+    public void testFieldOptions() throws Exception {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("Bezeichnung", Map.of("de", "Burg", "en", "Castle"));
+        json.put("Fläche", 12.50);
+        json.put("Schlagworte", List.of("Burg", "Ruine"));
+
+        FieldMapping title = new FieldMapping("title", "$.['Bezeichnung']", 1,
+                new FieldOptions(FieldOptions.Type.STRING, false, List.of("de", "en", "fr")));
+        List<String[]> titleValues = title.readValues(json);
+        assertEquals(1, titleValues.size());
+        assertArrayEquals(new String[] { "de", "Burg", "en", "Castle" }, titleValues.get(0));
+
+        FieldMapping area = new FieldMapping("area", "$.['Fläche']", 2, new FieldOptions(FieldOptions.Type.NUMBER, false, List.of()));
+        assertEquals("12.5", area.readValues(json).get(0)[1]);
+
+        FieldMapping keywords = new FieldMapping("keywords", "$.['Schlagworte']", 3, new FieldOptions(FieldOptions.Type.STRING, true, List.of()));
+        List<String[]> keywordValues = keywords.readValues(json);
+        assertEquals(2, keywordValues.size());
+        assertEquals("Ruine", keywordValues.get(1)[1]);
+    }
+
+    @Test
+    public void testFieldOptionsInvalidType() throws Exception {
+        assertEquals(FieldOptions.Type.NUMBER, FieldOptions.parseType("area", "Number"));
+        try {
+            FieldOptions.parseType("area", "decimal");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Field \"area\" has the unknown type \"decimal\", allowed types are string, number, boolean", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFieldOptionsMultipleValuesNotAllowed() throws Exception {
+        FieldMapping keywords = new FieldMapping("keywords", "$.['Schlagworte']", 3);
+        keywords.readValues(Map.of("Schlagworte", List.of("Burg", "Ruine")));
+    }
+
+    @Test
+    public void testRecordMapperUnchangedRecord() throws Exception {
+        RecordMapper mapper = new RecordMapper(new FieldMapping[] {
+                new FieldMapping("title", "$.['Bezeichnung']", 1, new FieldOptions(FieldOptions.Type.STRING, false, List.of("de", "en"))),
+                new FieldMapping("keywords", "$.['Schlagworte']", 2, new FieldOptions(FieldOptions.Type.STRING, true, List.of())),
+                new FieldMapping("type", "$.['Typ']", 3) });
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("Bezeichnung", Map.of("de", "Burg", "en", "Castle"));
+        json.put("Schlagworte", List.of("Burg", "Ruine"));
+        json.put("Typ", "Baudenkmal");
+
+        VocabularyRecord vocabRecord = newEmptyRecord();
+        assertTrue(mapper.apply(json, vocabRecord));
+        // the record was saved
+        vocabRecord.setId(42L);
+        assertFalse(mapper.apply(json, vocabRecord));
+
+        // the api may return values and translations in a different order
+        for (FieldInstance field : vocabRecord.getFields()) {
+            List<FieldValue> values = new ArrayList<>(field.getValues());
+            Collections.reverse(values);
+            for (FieldValue value : values) {
+                List<TranslationInstance> translations = new ArrayList<>(value.getTranslations());
+                Collections.reverse(translations);
+                value.setTranslations(translations);
+            }
+            field.setValues(values);
+        }
+        assertFalse(mapper.apply(json, vocabRecord));
+
+        json.put("Schlagworte", List.of("Burg"));
+        assertTrue(mapper.apply(json, vocabRecord));
+        assertEquals(List.of("Burg"), mapper.describe(vocabRecord).get("keywords"));
+    }
+
+    @Test
+    public void testProcessFileUnchangedRecord() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<?> objects = objectMapper.readValue(jsonFile.toFile(), List.class);
+        Path file = Files.createTempFile("heris", ".json");
+        try {
+            objectMapper.writeValue(file.toFile(), objects.subList(0, 1));
+
+            HerisQuartzPlugin plugin = new HerisQuartzPlugin();
+            plugin.parseConfiguration();
+            List<VocabularyRecord> created = new ArrayList<>();
+            plugin.processFile(file, created::add);
+            assertEquals(1, created.size());
+            assertEquals(1, plugin.getStatistics().getCreatedRecords());
+
+            // the saved record exists in the vocabulary
+            ExtendedVocabularyRecord existing = (ExtendedVocabularyRecord) created.get(0);
+            existing.setId(42L);
+            VocabularyRecordIndex index = new VocabularyRecordIndex(vocabularySchema.getDefinitions().get(0).getId());
+            index.add(existing);
+
+            plugin = new HerisQuartzPlugin();
+            plugin.parseConfiguration();
+            Whitebox.setInternalState(plugin, "recordIndex", index);
+            List<VocabularyRecord> saved = new ArrayList<>();
+            plugin.processFile(file, r -> {
+                if (r != null) {
+                    saved.add(r);
+                }
+            });
+
+            assertTrue(saved.isEmpty());
+            assertEquals(1, plugin.getStatistics().getProcessedRecords());
+            assertEquals(0, plugin.getStatistics().getCreatedRecords());
+            assertEquals(0, plugin.getStatistics().getChangedRecords());
+            assertEquals(1, plugin.getStatistics().getUnchangedRecords());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testFingerprintStoreSaveAndLoad() throws Exception {
+        Path file = Files.createTempDirectory("heris").resolve(".heris-fingerprints");
+        long fingerprint = FingerprintStore.hash(Map.of("HERIS-ID", "112518", "Katalogtitel", "Kapelle"));
+        FingerprintStore store = FingerprintStore.load(file, 1);
+        assertFalse(store.matches("112518", fingerprint));
+        store.put("112518", fingerprint);
+        // staged fingerprints are only stored after the record was saved
+        store.stage("112833", 7);
+        store.save();
+
+        FingerprintStore loaded = FingerprintStore.load(file, 1);
+        assertEquals(1, loaded.size());
+        assertTrue(loaded.matches("112518", fingerprint));
+        assertFalse(loaded.matches("112518", FingerprintStore.hash(Map.of("HERIS-ID", "112518", "Katalogtitel", "Wegkapelle"))));
+        assertFalse(loaded.matches("112833", 7));
+
+        // a changed mapping invalidates all fingerprints
+        FingerprintStore changedMapping = FingerprintStore.load(file, 2);
+        assertEquals(0, changedMapping.size());
+        assertFalse(changedMapping.matches("112518", fingerprint));
+    }
+
+    @Test
+    public void testMappingSignatureIncludesVocabulary() throws Exception {
+        HerisQuartzPlugin plugin = new HerisQuartzPlugin();
+        plugin.parseConfiguration();
+        long signature = Whitebox.<Long> invokeMethod(plugin, "getMappingSignature");
+        assertEquals(signature, (long) Whitebox.<Long> invokeMethod(plugin, "getMappingSignature"));
+
+        // a recreated vocabulary with the same name and mapping
+        Whitebox.setInternalState(plugin, "vocabularyId", 4711L);
+        assertNotEquals(signature, (long) Whitebox.<Long> invokeMethod(plugin, "getMappingSignature"));
+    }
+
+    @Test
+    public void testMappingStageKeepsOrderOfKey() throws Exception {
+        Map<Integer, List<Integer>> results = new ConcurrentHashMap<>();
+        try (MappingStage stage = new MappingStage(3, 2, "test-mapping-")) {
+            for (int i = 0; i < 100; i++) {
+                int key = i % 7;
+                int value = i;
+                stage.submit(key, () -> results.computeIfAbsent(key, k -> Collections.synchronizedList(new LinkedList<>())).add(value));
+            }
+        }
+        assertEquals(7, results.size());
+        for (Map.Entry<Integer, List<Integer>> entry : results.entrySet()) {
+            List<Integer> values = entry.getValue();
+            for (int i = 0; i < values.size(); i++) {
+                assertEquals(entry.getKey() + i * 7, values.get(i).intValue());
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMappingStageFailure() throws Exception {
+        try (MappingStage stage = new MappingStage(2, 10, "test-mapping-")) {
+            stage.submit(1, () -> {
+                throw new IllegalStateException("mapping failed");
+            });
+        }
+    }
+
+    @Test
+    public void testCheckpointCompletedOutOfOrder() throws Exception {
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(Files.createTempDirectory("heris").resolve("checkpoint"), 0);
+        ImportCheckpoint.Progress progress = checkpoint.getProgress(new ExportFile("export.json", 100, 1));
+        progress.complete(1);
+        progress.complete(2);
+        // gap at the first object
+        assertEquals(0, progress.getCompleted());
+        progress.complete(0);
+        assertEquals(3, progress.getCompleted());
+        progress.complete(4);
+        assertEquals(3, progress.getCompleted());
+        progress.complete(3);
+        assertEquals(5, progress.getCompleted());
+        // completing an object again changes nothing
+        progress.complete(2);
+        assertEquals(5, progress.getCompleted());
+    }
+
+    @Test
+    public void testCheckpointRecordSubmittedTwice() throws Exception {
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(Files.createTempDirectory("heris").resolve("checkpoint"), 0);
+        ImportCheckpoint.Progress progress = checkpoint.getProgress(new ExportFile("export.json", 100, 1));
+        VocabularyRecord vocabRecord = newEmptyRecord();
+        checkpoint.submitted(vocabRecord, progress, 0);
+        checkpoint.submitted(vocabRecord, progress, 1);
+        checkpoint.finished(vocabRecord);
+        assertEquals(1, progress.getCompleted());
+        checkpoint.finished(vocabRecord);
+        assertEquals(2, progress.getCompleted());
+        // no further object was submitted for the record
+        checkpoint.finished(vocabRecord);
+        assertEquals(2, progress.getCompleted());
+    }
+
+    @Test
+    public void testCheckpointSaveAndLoad() throws Exception {
+        Path file = Files.createTempDirectory("heris").resolve("checkpoint");
+        ExportFile first = new ExportFile("first.json", 100, 1);
+        ExportFile second = new ExportFile("second.json", 200, 2);
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(file, 0);
+        for (int i = 0; i < 5; i++) {
+            checkpoint.getProgress(first).complete(i);
+        }
+        checkpoint.getProgress(second).complete(0);
+        checkpoint.getProgress(second).complete(2);
+        checkpoint.save();
+
+        ImportCheckpoint loaded = ImportCheckpoint.load(file, 0);
+        assertEquals(5, loaded.getProgress(first).getCompleted());
+        // only the objects without gap are stored
+        assertEquals(1, loaded.getProgress(second).getCompleted());
+        // a file with a different size is a new file
+        assertEquals(0, loaded.getProgress(new ExportFile("first.json", 101, 1)).getCompleted());
+
+        // without progress the file is removed
+        loaded.remove(first);
+        loaded.remove(second);
+        loaded.save();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testCheckpointRetainAll() throws Exception {
+        Path file = Files.createTempDirectory("heris").resolve("checkpoint");
+        ExportFile current = new ExportFile("current.json", 100, 2);
+        ExportFile stale = new ExportFile("stale.json", 100, 1);
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(file, 0);
+        checkpoint.getProgress(current).complete(0);
+        checkpoint.getProgress(stale).complete(0);
+        checkpoint.save();
+
+        ImportCheckpoint loaded = ImportCheckpoint.load(file, 0);
+        loaded.retainAll(List.of(current));
+        assertEquals(1, loaded.getProgress(current).getCompleted());
+        assertEquals(0, loaded.getProgress(stale).getCompleted());
+    }
+
+    @Test
+    public void testReadJsonSkip() throws Exception {
+        List<Object> all = new LinkedList<>();
+        try (InputStream is = Files.newInputStream(jsonFile)) {
+            assertEquals(87, HerisJsonReader.read(is, all::add));
+        }
+        List<Object> remaining = new LinkedList<>();
+        try (InputStream is = Files.newInputStream(jsonFile)) {
+            assertEquals(77, HerisJsonReader.read(is, 10, remaining::add));
+        }
+        assertEquals(all.subList(10, 87), remaining);
+
+        // values of a top level object
+        List<Object> values = new LinkedList<>();
+        String json = "{\"a\": {\"id\": 1}, \"b\": [1, 2], \"c\": {\"id\": 3}}";
+        assertEquals(1, HerisJsonReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 2, values::add));
+        assertEquals(Map.of("id", 3), values.get(0));
+    }
+
+    @Test
+    public void testReadCompressedFiles() throws Exception {
+        List<Object> expected = new LinkedList<>();
+        try (InputStream is = HerisJsonReader.open(jsonFile)) {
+            assertEquals(87, HerisJsonReader.read(is, expected::add));
+        }
+        // the zip archive contains a text file before the json file
+        for (String name : List.of("sample.json.gz", "sample.zip")) {
+            List<Object> actual = new LinkedList<>();
+            try (InputStream is = HerisJsonReader.open(Paths.get(resourcesFolder, name))) {
+                assertEquals(name, 87, HerisJsonReader.read(is, actual::add));
+            }
+            assertEquals(name, expected, actual);
+        }
+    }
+
+    @Test
+    public void testRecordSaverCancelled() throws Exception {
+        List<VocabularyRecord> failed = new LinkedList<>();
+        RecordSaver saver = new RecordSaver(r -> {
+            throw new IllegalStateException("server not available");
+        }, 1, 0);
+        saver.setFailureListener((r, e) -> {
+            failed.add(r);
+            if (failed.size() == 3) {
+                saver.cancel();
+            }
+        });
+        int submitted = 0;
+        try {
+            for (int i = 0; i < 10; i++) {
+                saver.submit(newEmptyRecord());
+                submitted++;
+            }
+        } catch (IllegalStateException e) {
+            // expected after the third failure
+        }
+        saver.close();
+        assertEquals(3, submitted);
+        assertEquals(3, failed.size());
+        assertTrue(saver.isCancelled());
+    }
+
+    @Test
+    public void testRecordSaverBatchFallback() throws Exception {
+        List<Long> savedOneByOne = Collections.synchronizedList(new LinkedList<>());
+        int[] batchCalls = new int[1];
+        BatchRecordSink sink = new BatchRecordSink() {
+            @Override
+            public void saveAll(List<VocabularyRecord> vocabRecords) {
+                synchronized (batchCalls) {
+                    batchCalls[0]++;
+                }
+                throw new IllegalStateException("bulk request failed");
+            }
+
+            @Override
+            public void save(VocabularyRecord vocabRecord) {
+                if (vocabRecord.getId() == 3) {
+                    throw new IllegalStateException("invalid record");
+                }
+                savedOneByOne.add(vocabRecord.getId());
+            }
+        };
+        Map<Long, Integer> saved = new ConcurrentHashMap<>();
+        Map<Long, Integer> failed = new ConcurrentHashMap<>();
+        Map<Long, Integer> finished = new ConcurrentHashMap<>();
+        RecordSaver saver = new RecordSaver(sink, 2, 10, 4);
+        saver.setSavedListener(r -> saved.merge(r.getId(), 1, Integer::sum));
+        saver.setFailureListener((r, e) -> failed.merge(r.getId(), 1, Integer::sum));
+        saver.setFinishedListener(r -> finished.merge(r.getId(), 1, Integer::sum));
+        for (long id = 0; id < 10; id++) {
+            VocabularyRecord vocabRecord = newEmptyRecord();
+            vocabRecord.setId(id);
+            saver.submit(vocabRecord);
+        }
+        saver.close();
+
+        // batches of 4, 4 and 2 records
+        assertEquals(3, batchCalls[0]);
+        assertEquals(9, savedOneByOne.size());
+        assertEquals(9, saver.getSavedRecords());
+        assertEquals(1, saver.getFailures().size());
+        assertEquals(Map.of(3L, 1), failed);
+        assertEquals(9, saved.size());
+        assertFalse(saved.containsKey(3L));
+        assertEquals(10, finished.size());
+        for (long id = 0; id < 10; id++) {
+            assertEquals(Integer.valueOf(1), finished.get(id));
+            if (id != 3) {
+                assertEquals(Integer.valueOf(1), saved.get(id));
+            }
+        }
+    }
+
+    @Test
+    public void testImportLock() throws Exception {
+        Path folder = Files.createTempDirectory("heris");
+        Path lockFile = folder.resolve(".heris-HERIS.lock");
+        ImportLock first = ImportLock.tryAcquire(lockFile);
+        assertNotNull(first);
+        assertNull(ImportLock.tryAcquire(lockFile));
+        // same file with a different path
+        assertNull(ImportLock.tryAcquire(folder.resolve("..").resolve(folder.getFileName()).resolve(".heris-HERIS.lock")));
+        first.close();
+
+        ImportLock second = ImportLock.tryAcquire(lockFile);
+        assertNotNull(second);
+        second.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDiffReportChangedFields() throws Exception {
+        Path file = Files.createTempDirectory("heris").resolve("heris-dry-run.jsonl");
+        Map<String, List<String>> oldValues = new LinkedHashMap<>();
+        oldValues.put("herisid", List.of("112518"));
+        oldValues.put("title", List.of("Kapelle"));
+        oldValues.put("type", List.of("Baudenkmal"));
+        Map<String, List<String>> newValues = new LinkedHashMap<>(oldValues);
+        newValues.put("title", List.of("Wegkapelle"));
+        newValues.put("subCategory", List.of("Kleindenkmal"));
+        try (DiffReport report = new DiffReport(file)) {
+            report.recordChanged("112518", oldValues, newValues);
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        Map<String, Object> entry = new ObjectMapper().readValue(lines.get(0), Map.class);
+        assertEquals("changed", entry.get("type"));
+        assertEquals("112518", entry.get("identifier"));
+        Map<String, Map<String, Object>> changes = (Map<String, Map<String, Object>>) entry.get("changes");
+        assertEquals(List.of("title", "subCategory"), List.copyOf(changes.keySet()));
+        assertEquals(List.of("Kapelle"), changes.get("title").get("old"));
+        assertEquals(List.of("Wegkapelle"), changes.get("title").get("new"));
+        assertNull(changes.get("subCategory").get("old"));
+        assertEquals(List.of("Kleindenkmal"), changes.get("subCategory").get("new"));
+    }
+
+    @Test
+    public void testShard() throws Exception {
+        assertNull(Shard.parse(""));
+        Shard shard = Shard.parse("2/4");
+        assertEquals(2, shard.getIndex());
+        assertEquals(4, shard.getCount());
+        assertEquals("heris-import-report-2of4.json", shard.getFileName("heris-import-report.json"));
+        assertEquals(".heris-checkpoint-2of4", shard.getFileName(".heris-checkpoint"));
+
+        // each identifier belongs to exactly one shard
+        for (int i = 0; i < 1000; i++) {
+            String identifier = String.valueOf(i);
+            int matches = 0;
+            for (int index = 1; index <= 4; index++) {
+                if (new Shard(index, 4).contains(identifier)) {
+                    matches++;
+                }
+            }
+            assertEquals(1, matches);
+        }
+        assertTrue(new Shard(1, 4).contains(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShardInvalid() throws Exception {
+        Shard.parse("5/4");
+    }
+
+    @Test
+    public void testMergeShardReports() throws Exception {
+        Map<String, Map<String, Object>> reports = new LinkedHashMap<>();
+        reports.put("1/2", Map.of("files", List.of("export.json"), "aborted", false, "start", "2024-01-01T10:00:00Z", "end", "2024-01-01T10:01:00Z",
+                "bytesDownloaded", 100, "records", Map.of("processed", 10, "created", 4), "stages", Map.of("saveMs", 1000)));
+        reports.put("2/2", Map.of("files", List.of("export.json"), "aborted", false, "start", "2024-01-01T10:00:30Z", "end", "2024-01-01T10:02:00Z",
+                "bytesDownloaded", 100, "records", Map.of("processed", 20, "created", 6), "stages", Map.of("saveMs", 500)));
+        Map<String, Object> merged = ImportStatistics.mergeReports(reports);
+        assertEquals("2024-01-01T10:00:00Z", merged.get("start"));
+        assertEquals("2024-01-01T10:02:00Z", merged.get("end"));
+        assertEquals(120000L, merged.get("durationMs"));
+        assertEquals(200L, merged.get("bytesDownloaded"));
+        assertEquals(30L, ((Map<?, ?>) merged.get("records")).get("processed"));
+        assertEquals(10L, ((Map<?, ?>) merged.get("records")).get("created"));
+        assertEquals(1500L, ((Map<?, ?>) merged.get("stages")).get("saveMs"));
+    }
+
+    @Test
+    public void testIdentifierSet() throws Exception {
+        IdentifierSet identifiers = new IdentifierSet();
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(identifiers.add(String.valueOf(i * 7)));
+        }
+        assertTrue(identifiers.add("007"));
+        assertTrue(identifiers.add("HERIS-12"));
+        assertFalse(identifiers.add("14"));
+        assertEquals(5002, identifiers.size());
+
+        assertTrue(identifiers.contains("0"));
+        assertTrue(identifiers.contains("34993"));
+        assertFalse(identifiers.contains("34994"));
+        assertTrue(identifiers.contains("007"));
+        assertFalse(identifiers.contains("7 "));
+        assertFalse(identifiers.contains("07"));
+        assertTrue(identifiers.contains("HERIS-12"));
+    }
+
+    private ExtendedVocabularyRecord newRecordWithIdentifier(long definitionId, String identifier) {
+        ExtendedVocabularyRecord record = newEmptyRecord();
+        TranslationInstance translationInstance = new TranslationInstance();
+        translationInstance.setValue(identifier);
+        FieldValue fieldValue = new FieldValue();
+        fieldValue.setTranslations(List.of(translationInstance));
+        FieldInstance field = new FieldInstance();
+        field.setDefinitionId(definitionId);
+        field.setValues(List.of(fieldValue));
+        record.getFields().add(field);
+        return record;
     }
 }